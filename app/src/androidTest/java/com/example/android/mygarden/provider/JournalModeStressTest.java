@@ -0,0 +1,193 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs readers against a writer watering the whole garden in transactions, with write-ahead
+ * logging and with the rollback journal. Readers must always see a consistent garden; their
+ * latencies are logged under the JournalModeStressTest tag to compare the journal modes:
+ * <pre>
+ * ./gradlew connectedDebugAndroidTest
+ * adb logcat -s JournalModeStressTest
+ * </pre>
+ * Runs on a device rather than under Robolectric, whose SQLite runs every statement on a
+ * single thread.
+ */
+@RunWith(AndroidJUnit4.class)
+public class JournalModeStressTest {
+
+    private static final String TAG = JournalModeStressTest.class.getSimpleName();
+    private static final String DATABASE_NAME = "journal_mode_stress_test.db";
+
+    private static final int PLANT_COUNT = 2000;
+    private static final int WRITE_TRANSACTIONS = 200;
+    private static final int READER_COUNT = 3;
+
+    private PlantDbHelper mDbHelper;
+
+    @After
+    public void tearDown() {
+        if (mDbHelper != null) mDbHelper.close();
+        InstrumentationRegistry.getTargetContext().deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void writeAheadLogging() throws Exception {
+        stress(true);
+    }
+
+    @Test
+    public void rollbackJournal() throws Exception {
+        stress(false);
+    }
+
+    private void stress(boolean writeAheadLogging) throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        mDbHelper = new PlantDbHelper(context, DATABASE_NAME, writeAheadLogging);
+        final SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        plant(db);
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch readersDone = new CountDownLatch(READER_COUNT);
+        final List<long[]> readLatencies = new ArrayList<>();
+        for (int r = 0; r < READER_COUNT; r++) {
+            final long[] latencies = new long[2]; // max and total, in microseconds
+            readLatencies.add(latencies);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int reads = 0;
+                        while (writing.get()) {
+                            long start = System.nanoTime();
+                            readGarden(db);
+                            long micros = (System.nanoTime() - start) / 1000;
+                            latencies[0] = Math.max(latencies[0], micros);
+                            latencies[1] += micros;
+                            reads++;
+                        }
+                        latencies[1] = reads == 0 ? 0 : latencies[1] / reads;
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        readersDone.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        long writeStart = SystemClock.elapsedRealtime();
+        try {
+            SQLiteStatement water = db.compileStatement("UPDATE " + PlantEntry.TABLE_NAME
+                    + " SET " + PlantEntry.COLUMN_LAST_WATERED_TIME + "=?");
+            for (int i = 1; i <= WRITE_TRANSACTIONS; i++) {
+                db.beginTransaction();
+                try {
+                    water.bindLong(1, i);
+                    water.executeUpdateDelete();
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            water.close();
+        } finally {
+            writing.set(false);
+        }
+        long writeMillis = SystemClock.elapsedRealtime() - writeStart;
+        readersDone.await();
+
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        StringBuilder report = new StringBuilder(writeAheadLogging ? "WAL" : "rollback journal")
+                .append(": ").append(WRITE_TRANSACTIONS).append(" write transactions in ")
+                .append(writeMillis).append("ms");
+        for (long[] latencies : readLatencies) {
+            report.append(", read max ").append(latencies[0]).append("us avg ")
+                    .append(latencies[1]).append("us");
+        }
+        Log.i(TAG, report.toString());
+        String journalMode = DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null);
+        assertEquals(writeAheadLogging, "wal".equalsIgnoreCase(journalMode));
+    }
+
+    private static void plant(SQLiteDatabase db) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + PlantEntry.TABLE_NAME + " ("
+                + PlantEntry.COLUMN_PLANT_TYPE + ", " + PlantEntry.COLUMN_CREATION_TIME + ", "
+                + PlantEntry.COLUMN_LAST_WATERED_TIME + ") VALUES (?, ?, 0)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < PLANT_COUNT; i++) {
+                insert.bindLong(1, i % 2);
+                insert.bindLong(2, i);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    /**
+     * Reads the whole garden, which every write transaction waters at once, so all the plants
+     * must have been watered at the same time
+     */
+    private static void readGarden(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT " + PlantEntry.COLUMN_LAST_WATERED_TIME
+                + " FROM " + PlantEntry.TABLE_NAME, null);
+        try {
+            if (cursor.getCount() != PLANT_COUNT) {
+                throw new AssertionError("Read " + cursor.getCount() + " plants");
+            }
+            cursor.moveToFirst();
+            long wateredAt = cursor.getLong(0);
+            while (cursor.moveToNext()) {
+                if (cursor.getLong(0) != wateredAt) {
+                    throw new AssertionError("Read a partially watered garden");
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
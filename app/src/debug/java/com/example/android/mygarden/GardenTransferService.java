@@ -0,0 +1,75 @@
+package com.example.android.mygarden;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.util.Log;
+
+import com.example.android.mygarden.provider.GardenTransfer;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Debug builds only: imports or exports the garden from the command line, e.g.
+ * <pre>
+ * adb shell am startservice -n com.example.android.mygarden/.GardenTransferService \
+ *     -a com.example.android.mygarden.action.import_garden \
+ *     --es path /sdcard/Android/data/com.example.android.mygarden/files/garden.csv --es format CSV
+ * </pre>
+ * The service requires the DUMP permission, which the shell has and other apps do not.
+ */
+public class GardenTransferService extends IntentService {
+
+    public static final String ACTION_IMPORT_GARDEN = "com.example.android.mygarden.action.import_garden";
+    public static final String ACTION_EXPORT_GARDEN = "com.example.android.mygarden.action.export_garden";
+    public static final String EXTRA_PATH = "path";
+    public static final String EXTRA_FORMAT = "format";
+
+    private static final String TAG = GardenTransferService.class.getSimpleName();
+
+    public GardenTransferService() {
+        super(TAG);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null) return;
+        String path = intent.getStringExtra(EXTRA_PATH);
+        String format = intent.getStringExtra(EXTRA_FORMAT);
+        if (path == null) {
+            Log.e(TAG, "Missing " + EXTRA_PATH);
+            return;
+        }
+        try {
+            GardenTransfer.Format transferFormat = format == null
+                    ? GardenTransfer.Format.CSV : GardenTransfer.Format.valueOf(format);
+            long plantCount;
+            if (ACTION_IMPORT_GARDEN.equals(intent.getAction())) {
+                plantCount = GardenTransfer.importGarden(this, new File(path), transferFormat);
+                Log.i(TAG, "Imported " + plantCount + " plants from " + path);
+            } else if (ACTION_EXPORT_GARDEN.equals(intent.getAction())) {
+                plantCount = GardenTransfer.exportGarden(this, new File(path), transferFormat);
+                Log.i(TAG, "Exported " + plantCount + " plants to " + path);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Garden transfer failed", e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.android.mygarden;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.example.android.mygarden.provider.GardenSnapshotFile;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the garden changes made from the activities on a background thread, so the main
+ * thread never waits on the database. Changes are applied one at a time in the order they
+ * were requested, and the results are delivered on the main thread.
+ */
+public class GardenRepository {
+
+    private static final String TAG = GardenRepository.class.getSimpleName();
+
+    // The worker thread is let go when the repository has been idle for that long
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Receives the result of an operation on the main thread
+     */
+    public interface Callback<T> {
+        void onComplete(T result);
+    }
+
+    private static GardenRepository sInstance;
+
+    private final Context mContext;
+    private final ContentResolver mResolver;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * Returns the repository shared by the whole process
+     *
+     * @param context The context
+     * @return The GardenRepository
+     */
+    public static synchronized GardenRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new GardenRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private GardenRepository(Context context) {
+        mContext = context;
+        mResolver = context.getContentResolver();
+        mExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, TAG);
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Plants a new plant, created and watered now, then saves the garden and updates the widgets
+     *
+     * @param plantType The type of the new plant
+     * @param callback  Receives the URI of the new plant, may be null
+     */
+    public void insertPlant(final int plantType, final Callback<Uri> callback) {
+        final long timeNow = System.currentTimeMillis();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ContentValues contentValues = new ContentValues(3);
+                contentValues.put(PlantEntry.COLUMN_PLANT_TYPE, plantType);
+                contentValues.put(PlantEntry.COLUMN_CREATION_TIME, timeNow);
+                contentValues.put(PlantEntry.COLUMN_LAST_WATERED_TIME, timeNow);
+                Uri plantUri = mResolver.insert(PlantEntry.CONTENT_URI, contentValues);
+                GardenSnapshotFile.update(mContext);
+                PlantWateringService.startActionUpdatePlantWidgets(mContext);
+                deliver(callback, plantUri);
+            }
+        });
+    }
+
+    /**
+     * Cuts a plant, then saves the garden, updates the widgets and compacts the garden
+     *
+     * @param plantId  The plant to cut
+     * @param callback Receives whether the plant was cut, may be null
+     */
+    public void cutPlant(final long plantId, final Callback<Boolean> callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int plantsDeleted = mResolver.delete(
+                        ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId), null, null);
+                if (plantsDeleted > 0) {
+                    GardenSnapshotFile.update(mContext);
+                    PlantWateringService.startActionUpdatePlantWidgets(mContext);
+                    // The cut plant is only marked deleted, remove it once the widgets are updated
+                    PlantWateringService.startActionCompactGarden(mContext);
+                }
+                deliver(callback, plantsDeleted > 0);
+            }
+        });
+    }
+
+    private <T> void deliver(final Callback<T> callback, final T result) {
+        if (callback == null) return;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onComplete(result);
+            }
+        });
+    }
+}
@@ -16,38 +16,50 @@ package com.example.android.mygarden;
 * limitations under the License.
 */
 
+import android.appwidget.AppWidgetManager;
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Bundle;
+import android.util.LruCache;
 import android.view.View;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
+import com.example.android.mygarden.provider.GardenPages;
+import com.example.android.mygarden.provider.GardenSnapshot;
+import com.example.android.mygarden.provider.GardenSnapshotFile;
 import com.example.android.mygarden.provider.PlantContract;
-import com.example.android.mygarden.ui.PlantDetailActivity;
+import com.example.android.mygarden.utils.PerfMetrics;
 import com.example.android.mygarden.utils.PlantUtils;
 
-import static com.example.android.mygarden.provider.PlantContract.BASE_CONTENT_URI;
-import static com.example.android.mygarden.provider.PlantContract.PATH_PLANTS;
-
 
 public class GridWidgetService extends RemoteViewsService {
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
-        return new GridRemoteViewsFactory(this.getApplicationContext());
+        int appWidgetId = intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                AppWidgetManager.INVALID_APPWIDGET_ID);
+        return new GridRemoteViewsFactory(this.getApplicationContext(), appWidgetId);
     }
 }
 
 class GridRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
 
-    Context mContext;
-    Cursor mCursor;
+    // Plants loaded per query, and pages kept in memory, bounding the memory used
+    // by the widget regardless of the garden size
+    private static final int PAGE_SIZE = 64;
+    private static final int MAX_CACHED_PAGES = 4;
 
-    public GridRemoteViewsFactory(Context applicationContext) {
+    Context mContext;
+    int mAppWidgetId;
+    int mCount;
+    // Whether the next data set change is the first one, which starts from the saved snapshot
+    boolean mFirstLoad = true;
+    // Pages of plants keyed by page index, least recently used ones are dropped
+    LruCache<Integer, GardenSnapshot> mPages = new LruCache<>(MAX_CACHED_PAGES);
+
+    public GridRemoteViewsFactory(Context applicationContext, int appWidgetId) {
         mContext = applicationContext;
-
+        mAppWidgetId = appWidgetId;
     }
 
     @Override
@@ -58,27 +70,79 @@ class GridRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
     //called on start and when notifyAppWidgetViewDataChanged is called
     @Override
     public void onDataSetChanged() {
-        // Get all plant info ordered by creation time
-        Uri PLANT_URI = BASE_CONTENT_URI.buildUpon().appendPath(PATH_PLANTS).build();
-        if (mCursor != null) mCursor.close();
-        mCursor = mContext.getContentResolver().query(
-                PLANT_URI,
-                null,
-                null,
-                null,
-                PlantContract.PlantEntry.COLUMN_CREATION_TIME
-        );
+        long start = PerfMetrics.begin(PerfMetrics.WIDGET_GRID_DATA_CHANGED);
+        try {
+            mPages.evictAll();
+            GardenSnapshotFile savedGarden = mFirstLoad ? GardenSnapshotFile.read(mContext) : null;
+            mFirstLoad = false;
+            if (savedGarden != null) {
+                // Draw the garden saved after the last change right away, then reload this
+                // widget's data from the provider
+                loadSavedGarden(savedGarden);
+                if (mAppWidgetId != AppWidgetManager.INVALID_APPWIDGET_ID) {
+                    AppWidgetManager.getInstance(mContext)
+                            .notifyAppWidgetViewDataChanged(mAppWidgetId, R.id.widget_grid_view);
+                }
+            } else {
+                // Only count the plants, pages are loaded as they are displayed
+                mCount = GardenPages.queryCount(mContext.getContentResolver());
+            }
+        } finally {
+            PerfMetrics.end(PerfMetrics.WIDGET_GRID_DATA_CHANGED, start);
+        }
+    }
+
+    /**
+     * Uses the saved plants as the first pages of the garden
+     *
+     * @param savedGarden The saved garden
+     */
+    private void loadSavedGarden(GardenSnapshotFile savedGarden) {
+        GardenSnapshot snapshot = savedGarden.getSnapshot();
+        mCount = savedGarden.getPlantCount();
+        boolean wholeGarden = snapshot.getCount() == mCount;
+        for (int start = 0; start < snapshot.getCount() && start / PAGE_SIZE < MAX_CACHED_PAGES;
+             start += PAGE_SIZE) {
+            int end = Math.min(start + PAGE_SIZE, snapshot.getCount());
+            // A shorter page is only complete when it ends the garden
+            if (end - start < PAGE_SIZE && !wholeGarden) break;
+            mPages.put(start / PAGE_SIZE, snapshot.slice(start, end));
+        }
     }
 
     @Override
     public void onDestroy() {
-        mCursor.close();
+        mPages.evictAll();
     }
 
     @Override
     public int getCount() {
-        if (mCursor == null) return 0;
-        return mCursor.getCount();
+        return mCount;
+    }
+
+    /**
+     * Returns the page containing the plant at the given position, loading it if needed
+     *
+     * @param position The position of the plant in the GridView
+     * @return The page, which may be shorter than expected if plants were deleted meanwhile
+     */
+    private GardenSnapshot getPage(int position) {
+        int pageIndex = position / PAGE_SIZE;
+        GardenSnapshot page = mPages.get(pageIndex);
+        if (page == null) {
+            GardenSnapshot previousPage = pageIndex > 0 ? mPages.get(pageIndex - 1) : null;
+            if (previousPage != null && previousPage.getCount() == PAGE_SIZE) {
+                // Continue right after the previous page instead of skipping all the rows before
+                int last = PAGE_SIZE - 1;
+                page = GardenPages.queryPageAfter(mContext.getContentResolver(),
+                        previousPage.getCreatedAt(last), previousPage.getPlantId(last), PAGE_SIZE);
+            } else {
+                page = GardenPages.queryPage(mContext.getContentResolver(),
+                        pageIndex * PAGE_SIZE, PAGE_SIZE);
+            }
+            mPages.put(pageIndex, page);
+        }
+        return page;
     }
 
     /**
@@ -89,23 +153,31 @@ class GridRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
      */
     @Override
     public RemoteViews getViewAt(int position) {
-        if (mCursor == null || mCursor.getCount() == 0) return null;
-        mCursor.moveToPosition(position);
-        int idIndex = mCursor.getColumnIndex(PlantContract.PlantEntry._ID);
-        int createTimeIndex = mCursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_CREATION_TIME);
-        int waterTimeIndex = mCursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME);
-        int plantTypeIndex = mCursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_PLANT_TYPE);
-
-        long plantId = mCursor.getLong(idIndex);
-        int plantType = mCursor.getInt(plantTypeIndex);
-        long createdAt = mCursor.getLong(createTimeIndex);
-        long wateredAt = mCursor.getLong(waterTimeIndex);
+        long start = PerfMetrics.begin(PerfMetrics.WIDGET_GRID_GET_VIEW);
+        try {
+            return getPlantView(position);
+        } finally {
+            PerfMetrics.end(PerfMetrics.WIDGET_GRID_GET_VIEW, start);
+        }
+    }
+
+    private RemoteViews getPlantView(int position) {
+        if (position >= mCount) return null;
+        GardenSnapshot page = getPage(position);
+        int index = position % PAGE_SIZE;
+        if (index >= page.getCount()) return null;
+
+        long plantId = page.getPlantId(index);
+        int plantType = page.getPlantType(index);
+        long createdAt = page.getCreatedAt(index);
+        long wateredAt = page.getWateredAt(index);
         long timeNow = System.currentTimeMillis();
 
         RemoteViews views = new RemoteViews(mContext.getPackageName(), R.layout.plant_widget);
 
         // Update the plant image
         int imgRes = PlantUtils.getPlantImageRes(mContext, timeNow - createdAt, timeNow - wateredAt, plantType);
+        // Only the resource Id crosses the binder, the host loads and caches the drawable
         views.setImageViewResource(R.id.widget_plant_image, imgRes);
         views.setTextViewText(R.id.widget_plant_name, String.valueOf(plantId));
         // Always hide the water drop in GridView mode
@@ -113,7 +185,7 @@ class GridRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
 
         // Fill in the onClick PendingIntent Template using the specific plant Id for each item individually
         Bundle extras = new Bundle();
-        extras.putLong(PlantDetailActivity.EXTRA_PLANT_ID, plantId);
+        extras.putLong(PlantContract.EXTRA_PLANT_ID, plantId);
         Intent fillInIntent = new Intent();
         fillInIntent.putExtras(extras);
         views.setOnClickFillInIntent(R.id.widget_plant_image, fillInIntent);
@@ -124,7 +196,8 @@ class GridRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
 
     @Override
     public RemoteViews getLoadingView() {
-        return null;
+        // Empty placeholder of the item size, shown while pages are loaded
+        return new RemoteViews(mContext.getPackageName(), R.layout.plant_widget_loading);
     }
 
     @Override
@@ -132,9 +205,18 @@ class GridRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
         return 1; // Treat all items in the GridView the same
     }
 
+    /**
+     * Returns the database plant Id at the given position, so the ids stay stable when
+     * plants are added or removed
+     *
+     * @param position The position of the plant in the GridView
+     * @return The plant Id
+     */
     @Override
-    public long getItemId(int i) {
-        return i;
+    public long getItemId(int position) {
+        GardenSnapshot page = getPage(position);
+        int index = position % PAGE_SIZE;
+        return index < page.getCount() ? page.getPlantId(index) : position;
     }
 
     @Override
@@ -142,4 +224,3 @@ class GridRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
         return true;
     }
 }
-
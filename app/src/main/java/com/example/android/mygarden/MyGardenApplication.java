@@ -0,0 +1,135 @@
+package com.example.android.mygarden;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.app.Application;
+import android.content.Context;
+import android.os.Process;
+import android.os.StrictMode;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.mygarden.provider.PlantDbHelper;
+import com.example.android.mygarden.utils.PlantUtils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+public class MyGardenApplication extends Application {
+
+    private static final String TAG = MyGardenApplication.class.getSimpleName();
+
+    private static long sStartUptimeMillis;
+
+    /**
+     * Returns the uptime at which the application was created, the start of cold startups
+     */
+    public static long getStartUptimeMillis() {
+        return sStartUptimeMillis;
+    }
+
+    @Override
+    public void onCreate() {
+        sStartUptimeMillis = SystemClock.uptimeMillis();
+        super.onCreate();
+        if (BuildConfig.DEBUG) {
+            // Report any disk or network access left on the main thread, and leaked
+            // cursors or streams, in debug builds
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .detectNetwork()
+                    .penaltyLog()
+                    .build());
+            StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                    .detectLeakedSqlLiteObjects()
+                    .detectLeakedClosableObjects()
+                    .penaltyLog()
+                    .build());
+        }
+        warmUp();
+    }
+
+    /**
+     * Opens the database, creating or upgrading it if needed, and resolves the plant images
+     * in the background while the first activity is being displayed, rather than on the
+     * first query and bind
+     */
+    private void warmUp() {
+        final Context context = this;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                // The provider, and so the database, only lives in the app process, the widget
+                // process (see widgetProcess in build.gradle) goes through the provider
+                if (isAppProcess(context)) PlantDbHelper.getInstance(context).getWritableDatabase();
+                PlantUtils.warmUp(context);
+            }
+        }, TAG);
+        thread.start();
+    }
+
+    /**
+     * Returns whether this is the app process rather than the widget process. Reads the
+     * process name from /proc, so it must not be called on the main thread.
+     *
+     * @param context The context
+     * @return True in the app process, and whenever the process name cannot be read
+     */
+    private static boolean isAppProcess(Context context) {
+        if (!BuildConfig.SEPARATE_WIDGET_PROCESS) return true;
+        String processName = readProcessName();
+        if (processName == null) {
+            Log.w(TAG, "Cannot read the process name, assuming the app process");
+            return true;
+        }
+        return context.getPackageName().equals(processName);
+    }
+
+    /**
+     * Returns the name of the current process, from its command line
+     *
+     * @return The process name, or null if it cannot be read
+     */
+    private static String readProcessName() {
+        byte[] cmdline = new byte[256];
+        int length = 0;
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream("/proc/self/cmdline");
+            int read;
+            while (length < cmdline.length
+                    && (read = in.read(cmdline, length, cmdline.length - length)) > 0) {
+                length += read;
+            }
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        // The arguments are separated by NUL characters, the name is the first one
+        int end = 0;
+        while (end < length && cmdline[end] != 0) end++;
+        return end > 0 ? new String(cmdline, 0, end) : null;
+    }
+}
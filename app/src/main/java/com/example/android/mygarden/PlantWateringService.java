@@ -16,42 +16,90 @@ package com.example.android.mygarden;
 * limitations under the License.
 */
 
-import android.app.IntentService;
+import android.app.ActivityManager;
+import android.app.Service;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
-import android.content.ContentUris;
-import android.content.ContentValues;
+import android.content.ContentProviderOperation;
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
+import android.content.OperationApplicationException;
+import android.database.SQLException;
+import android.os.Debug;
+import android.os.IBinder;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
 
+import com.example.android.mygarden.provider.GardenSnapshotFile;
 import com.example.android.mygarden.provider.PlantContract;
+import com.example.android.mygarden.provider.PlantCursor;
+import com.example.android.mygarden.utils.PerfMetrics;
 import com.example.android.mygarden.utils.PlantUtils;
 
-import static com.example.android.mygarden.provider.PlantContract.BASE_CONTENT_URI;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static com.example.android.mygarden.provider.PlantContract.INVALID_PLANT_ID;
-import static com.example.android.mygarden.provider.PlantContract.PATH_PLANTS;
 
 /**
- * An {@link IntentService} subclass for handling asynchronous task requests in
- * a service on a separate handler thread.
+ * A {@link Service} that handles watering and widget update requests on a background thread.
+ * Requests that arrive while earlier ones are still pending are coalesced: duplicate widget
+ * updates collapse into one, and all pending waterings are applied in a single batch.
  */
-public class PlantWateringService extends IntentService {
+public class PlantWateringService extends Service {
 
     public static final String ACTION_WATER_PLANT = "com.example.android.mygarden.action.water_plant";
+    public static final String ACTION_WATER_PLANTS = "com.example.android.mygarden.action.water_plants";
     public static final String ACTION_UPDATE_PLANT_WIDGETS = "com.example.android.mygarden.action.update_plant_widgets";
-    public static final String EXTRA_PLANT_ID = "com.example.android.mygarden.extra.PLANT_ID";;
+    public static final String ACTION_COMPACT_GARDEN = "com.example.android.mygarden.action.compact_garden";
+    public static final String EXTRA_PLANT_ID = PlantContract.EXTRA_PLANT_ID;
 
-    public PlantWateringService() {
-        super("PlantWateringService");
-    }
+    private static final String TAG = PlantWateringService.class.getSimpleName();
+
+    // Job metrics, shared by all instances of the service in this process
+    private static final AtomicInteger sQueuedJobs = new AtomicInteger();
+    private static final AtomicInteger sCoalescedJobs = new AtomicInteger();
+    private static final AtomicInteger sExecutedJobs = new AtomicInteger();
+
+    private static final long PSS_SAMPLE_INTERVAL_MILLIS = 60 * 1000;
+    // Only accessed on the single background thread
+    private static long sLastPssSampleMillis;
+
+    // Pending work, guarded by mLock
+    private final Object mLock = new Object();
+    private final Set<Long> mPendingWaterPlantIds = new HashSet<>();
+    private final Set<Integer> mPendingWidgetIds = new HashSet<>();
+    private boolean mWaterPlantsPending;
+    private boolean mUpdateWidgetsPending;
+    private boolean mCompactPending;
+    private boolean mDrainScheduled;
+    private int mLastStartId;
+
+    // Single background thread, since every job ends up writing to the same database,
+    // with room for the one drain task that is ever queued
+    private ThreadPoolExecutor mExecutor;
+
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drainPendingWork();
+        }
+    };
 
     /**
      * Starts this service to perform WaterPlant action with the given parameters. If
-     * the service is already performing a task this action will be queued.
-     *
-     * @see IntentService
+     * the plant is already waiting to be watered this request is coalesced with it.
      */
     public static void startActionWaterPlant(Context context, long plantId) {
         Intent intent = new Intent(context, PlantWateringService.class);
@@ -61,10 +109,18 @@ public class PlantWateringService extends IntentService {
     }
 
     /**
-     * Starts this service to perform UpdatePlantWidgets action with the given parameters. If
-     * the service is already performing a task this action will be queued.
-     *
-     * @see IntentService
+     * Starts this service to perform WaterPlants action, watering every plant that is alive
+     * and can be watered. Pending requests of this action are coalesced.
+     */
+    public static void startActionWaterPlants(Context context) {
+        Intent intent = new Intent(context, PlantWateringService.class);
+        intent.setAction(ACTION_WATER_PLANTS);
+        context.startService(intent);
+    }
+
+    /**
+     * Starts this service to perform UpdatePlantWidgets action. Pending requests of this
+     * action are coalesced into a single widget update.
      */
     public static void startActionUpdatePlantWidgets(Context context) {
         Intent intent = new Intent(context, PlantWateringService.class);
@@ -73,81 +129,334 @@ public class PlantWateringService extends IntentService {
     }
 
     /**
-     * @param intent
+     * Starts this service to update a single widget, e.g. after it was resized. Pending
+     * requests for the same widget, or for all widgets, absorb this one.
+     */
+    public static void startActionUpdatePlantWidget(Context context, int appWidgetId) {
+        Intent intent = new Intent(context, PlantWateringService.class);
+        intent.setAction(ACTION_UPDATE_PLANT_WIDGETS);
+        intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
+        context.startService(intent);
+    }
+
+    /**
+     * Starts this service to remove the cut plants from the database. Runs once no other
+     * work is pending, and pending requests of this action are coalesced.
+     */
+    public static void startActionCompactGarden(Context context) {
+        Intent intent = new Intent(context, PlantWateringService.class);
+        intent.setAction(ACTION_COMPACT_GARDEN);
+        context.startService(intent);
+    }
+
+    /**
+     * Returns the number of requests received by the service in this process
+     */
+    public static int getQueuedJobCount() {
+        return sQueuedJobs.get();
+    }
+
+    /**
+     * Returns the number of requests that were merged into an already pending job
+     */
+    public static int getCoalescedJobCount() {
+        return sCoalescedJobs.get();
+    }
+
+    /**
+     * Returns the number of jobs (watering batches and widget updates) actually executed
+     */
+    public static int getExecutedJobCount() {
+        return sExecutedJobs.get();
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(1), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, TAG);
+            }
+        });
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        synchronized (mLock) {
+            mLastStartId = startId;
+            if (intent != null) enqueue(intent);
+            if (!mDrainScheduled) {
+                mDrainScheduled = true;
+                mExecutor.execute(mDrainRunnable);
+            }
+        }
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        mExecutor.shutdown();
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    /**
+     * Prints the job counts and the metrics of the process running this service, which is
+     * the widget process when the widgets run separately, with
+     * "adb shell dumpsys activity service com.example.android.mygarden/.PlantWateringService"
      */
     @Override
-    protected void onHandleIntent(Intent intent) {
-        if (intent != null) {
-            final String action = intent.getAction();
-            if (ACTION_WATER_PLANT.equals(action)) {
-                final long plantId = intent.getLongExtra(EXTRA_PLANT_ID,
-                        PlantContract.INVALID_PLANT_ID);
-                handleActionWaterPlant(plantId);
-            } else if (ACTION_UPDATE_PLANT_WIDGETS.equals(action)) {
-                handleActionUpdatePlantWidgets();
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("Jobs: queued=" + getQueuedJobCount()
+                + " coalesced=" + getCoalescedJobCount()
+                + " executed=" + getExecutedJobCount());
+        writer.println("Widget updates: skipped=" + PlantWidgetProvider.getSkippedUpdateCount()
+                + " partial=" + PlantWidgetProvider.getPartialUpdateCount()
+                + " full=" + PlantWidgetProvider.getFullUpdateCount());
+        PerfMetrics.dump(writer);
+    }
+
+    /**
+     * Records the request in the pending work, merging it with an identical pending request.
+     * Must be called holding mLock.
+     *
+     * @param intent The request
+     */
+    private void enqueue(Intent intent) {
+        final String action = intent.getAction();
+        boolean added;
+        if (ACTION_WATER_PLANT.equals(action)) {
+            final long plantId = intent.getLongExtra(EXTRA_PLANT_ID,
+                    PlantContract.INVALID_PLANT_ID);
+            added = plantId != INVALID_PLANT_ID && mPendingWaterPlantIds.add(plantId);
+        } else if (ACTION_WATER_PLANTS.equals(action)) {
+            added = !mWaterPlantsPending;
+            mWaterPlantsPending = true;
+        } else if (ACTION_UPDATE_PLANT_WIDGETS.equals(action)) {
+            int appWidgetId = intent.getIntExtra(AppWidgetManager.EXTRA_APPWIDGET_ID,
+                    AppWidgetManager.INVALID_APPWIDGET_ID);
+            if (appWidgetId == AppWidgetManager.INVALID_APPWIDGET_ID) {
+                added = !mUpdateWidgetsPending;
+                mUpdateWidgetsPending = true;
+            } else {
+                added = !mUpdateWidgetsPending && mPendingWidgetIds.add(appWidgetId);
             }
+        } else if (ACTION_COMPACT_GARDEN.equals(action)) {
+            added = !mCompactPending;
+            mCompactPending = true;
+        } else {
+            return;
         }
+        sQueuedJobs.incrementAndGet();
+        if (!added) sCoalescedJobs.incrementAndGet();
     }
 
     /**
-     * Handle action WaterPlant in the provided background thread with the provided
-     * parameters.
+     * Runs on the background thread until no work is pending, then stops the service
      */
-    private void handleActionWaterPlant(long plantId) {
-        Uri SINGLE_PLANT_URI = ContentUris.withAppendedId(
-                BASE_CONTENT_URI.buildUpon().appendPath(PATH_PLANTS).build(), plantId);
-        ContentValues contentValues = new ContentValues();
-        long timeNow = System.currentTimeMillis();
-        contentValues.put(PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME, timeNow);
-        // Update only if that plant is still alive
-        getContentResolver().update(
-                SINGLE_PLANT_URI,
-                contentValues,
-                PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME + ">?",
-                new String[]{String.valueOf(timeNow - PlantUtils.MAX_AGE_WITHOUT_WATER)});
-        // Always update widgets after watering plants
-        startActionUpdatePlantWidgets(this);
+    private void drainPendingWork() {
+        while (true) {
+            long[] waterPlantIds;
+            int[] widgetIds;
+            boolean waterPlants;
+            boolean updateWidgets;
+            boolean compactGarden;
+            synchronized (mLock) {
+                waterPlantIds = new long[mPendingWaterPlantIds.size()];
+                int i = 0;
+                for (long plantId : mPendingWaterPlantIds) waterPlantIds[i++] = plantId;
+                mPendingWaterPlantIds.clear();
+                widgetIds = new int[mPendingWidgetIds.size()];
+                i = 0;
+                for (int appWidgetId : mPendingWidgetIds) widgetIds[i++] = appWidgetId;
+                mPendingWidgetIds.clear();
+                waterPlants = mWaterPlantsPending;
+                mWaterPlantsPending = false;
+                updateWidgets = mUpdateWidgetsPending;
+                mUpdateWidgetsPending = false;
+                boolean otherWork = waterPlantIds.length > 0 || widgetIds.length > 0
+                        || waterPlants || updateWidgets;
+                // Compaction is the least urgent, it waits until everything else is done
+                compactGarden = mCompactPending && !otherWork;
+                if (compactGarden) mCompactPending = false;
+                if (!otherWork && !compactGarden) {
+                    mDrainScheduled = false;
+                    // Only stops if no request arrived after the last one we handled
+                    stopSelf(mLastStartId);
+                    return;
+                }
+            }
+            if (waterPlantIds.length > 0 || waterPlants) {
+                long start = PerfMetrics.begin(PerfMetrics.SERVICE_WATER_PLANTS);
+                try {
+                    handleActionWaterPlants(waterPlantIds, waterPlants);
+                } finally {
+                    PerfMetrics.end(PerfMetrics.SERVICE_WATER_PLANTS, start);
+                }
+                sExecutedJobs.incrementAndGet();
+                // Always update widgets after watering plants
+                updateWidgets = true;
+            }
+            if (updateWidgets) {
+                long start = PerfMetrics.begin(PerfMetrics.SERVICE_UPDATE_WIDGETS);
+                try {
+                    handleActionUpdatePlantWidgets(null);
+                } finally {
+                    PerfMetrics.end(PerfMetrics.SERVICE_UPDATE_WIDGETS, start);
+                }
+                sExecutedJobs.incrementAndGet();
+            } else if (widgetIds.length > 0) {
+                long start = PerfMetrics.begin(PerfMetrics.SERVICE_UPDATE_WIDGETS);
+                try {
+                    handleActionUpdatePlantWidgets(widgetIds);
+                } finally {
+                    PerfMetrics.end(PerfMetrics.SERVICE_UPDATE_WIDGETS, start);
+                }
+                sExecutedJobs.incrementAndGet();
+            }
+            if (updateWidgets || widgetIds.length > 0) samplePss();
+            if (compactGarden) {
+                long start = PerfMetrics.begin(PerfMetrics.SERVICE_COMPACT_GARDEN);
+                try {
+                    handleActionCompactGarden();
+                } finally {
+                    PerfMetrics.end(PerfMetrics.SERVICE_COMPACT_GARDEN, start);
+                }
+                sExecutedJobs.incrementAndGet();
+            }
+        }
     }
 
+    /**
+     * Records the memory footprint of the process, and of all the app processes, after a
+     * widget refresh, at most once per PSS_SAMPLE_INTERVAL_MILLIS since measuring it walks
+     * the whole address space
+     */
+    private void samplePss() {
+        long now = SystemClock.uptimeMillis();
+        if (sLastPssSampleMillis != 0 && now - sLastPssSampleMillis < PSS_SAMPLE_INTERVAL_MILLIS) {
+            return;
+        }
+        sLastPssSampleMillis = now;
+        PerfMetrics.setValue(PerfMetrics.WIDGET_REFRESH_PSS, Debug.getPss());
+        // A refresh from the widget process also keeps the app process, hosting the
+        // provider, running, so count both
+        ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+        List<ActivityManager.RunningAppProcessInfo> processes = activityManager.getRunningAppProcesses();
+        if (processes == null) return;
+        List<Integer> pids = new ArrayList<>();
+        for (ActivityManager.RunningAppProcessInfo process : processes) {
+            if (process.uid == Process.myUid()) pids.add(process.pid);
+        }
+        int[] pidArray = new int[pids.size()];
+        for (int i = 0; i < pidArray.length; i++) pidArray[i] = pids.get(i);
+        long totalPss = 0;
+        for (Debug.MemoryInfo memoryInfo : activityManager.getProcessMemoryInfo(pidArray)) {
+            totalPss += memoryInfo.getTotalPss();
+        }
+        PerfMetrics.setValue(PerfMetrics.WIDGET_REFRESH_TOTAL_PSS, totalPss);
+    }
+
+    /**
+     * Handle action CompactGarden in the provided background thread
+     */
+    private void handleActionCompactGarden() {
+        try {
+            // Run by the provider, which owns the database, as this service may run
+            // in a separate widget process
+            getContentResolver().call(PlantContract.PlantEntry.CONTENT_URI,
+                    PlantContract.METHOD_COMPACT, null, null);
+        } catch (SQLException e) {
+            Log.e(TAG, "Failed to compact the garden", e);
+        }
+    }
+
+    /**
+     * Handle the pending WaterPlant and WaterPlants actions in the provided background thread,
+     * as a single batch resulting in one change notification.
+     *
+     * @param plantIds    The plants to water, if still alive
+     * @param waterPlants True to also water every plant that can be watered
+     */
+    private void handleActionWaterPlants(long[] plantIds, boolean waterPlants) {
+        long timeNow = System.currentTimeMillis();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(plantIds.length + 1);
+        for (long plantId : plantIds) {
+            // Updated only if that plant is still alive
+            operations.add(ContentProviderOperation
+                    .newUpdate(PlantContract.PlantEntry.buildWaterPlantUri(plantId))
+                    .withValue(PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME, timeNow)
+                    .build());
+        }
+        if (waterPlants) {
+            operations.add(ContentProviderOperation
+                    .newUpdate(PlantContract.PlantEntry.CONTENT_WATER_URI)
+                    .withValue(PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME, timeNow)
+                    .build());
+        }
+        try {
+            getContentResolver().applyBatch(PlantContract.AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(TAG, "Failed to water plants", e);
+        }
+        // Save the garden for the next process start before the widgets reload it
+        GardenSnapshotFile.update(this);
+    }
 
     /**
      * Handle action UpdatePlantWidgets in the provided background thread
+     *
+     * @param appWidgetIds The widgets to update, or null to update all of them
      */
-    private void handleActionUpdatePlantWidgets() {
+    private void handleActionUpdatePlantWidgets(int[] appWidgetIds) {
         //Query to get the plant that's most in need for water (last watered)
-        Uri PLANT_URI = BASE_CONTENT_URI.buildUpon().appendPath(PATH_PLANTS).build();
-        Cursor cursor = getContentResolver().query(
-                PLANT_URI,
+        PlantCursor cursor = PlantCursor.wrap(getContentResolver().query(
+                PlantContract.PlantEntry.CONTENT_THIRSTIEST_URI,
                 null,
                 null,
                 null,
-                PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME
-        );
+                null
+        ));
         // Extract the plant details
         int imgRes = R.drawable.grass; // Default image in case our garden is empty
         boolean canWater = false; // Default to hide the water drop button
         long plantId = INVALID_PLANT_ID;
-        if (cursor != null && cursor.getCount() > 0) {
-            cursor.moveToFirst();
-            int idIndex = cursor.getColumnIndex(PlantContract.PlantEntry._ID);
-            int createTimeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_CREATION_TIME);
-            int waterTimeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME);
-            int plantTypeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_PLANT_TYPE);
-            plantId = cursor.getLong(idIndex);
-            long timeNow = System.currentTimeMillis();
-            long wateredAt = cursor.getLong(waterTimeIndex);
-            long createdAt = cursor.getLong(createTimeIndex);
-            int plantType = cursor.getInt(plantTypeIndex);
-            cursor.close();
-            canWater = (timeNow - wateredAt) > PlantUtils.MIN_AGE_BETWEEN_WATER &&
-                    (timeNow - wateredAt) < PlantUtils.MAX_AGE_WITHOUT_WATER;
-            imgRes = PlantUtils.getPlantImageRes(this, timeNow - createdAt, timeNow - wateredAt, plantType);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    plantId = cursor.getPlantId();
+                    long timeNow = System.currentTimeMillis();
+                    long wateredAt = cursor.getWateredAt();
+                    long createdAt = cursor.getCreatedAt();
+                    int plantType = cursor.getPlantType();
+                    canWater = (timeNow - wateredAt) > PlantUtils.MIN_AGE_BETWEEN_WATER &&
+                            (timeNow - wateredAt) < PlantUtils.MAX_AGE_WITHOUT_WATER;
+                    imgRes = PlantUtils.getPlantImageRes(this, timeNow - createdAt, timeNow - wateredAt, plantType);
+                }
+            } finally {
+                cursor.close();
+            }
         }
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
-        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this, PlantWidgetProvider.class));
-        //Trigger data update to handle the GridView widgets and force a data refresh
-        appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_grid_view);
-        //Now update all widgets
+        if (appWidgetIds == null) {
+            appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this, PlantWidgetProvider.class));
+        }
+        //Now update the widgets, which also refreshes the data of the GridView widgets
         PlantWidgetProvider.updatePlantWidgets(this, appWidgetManager, imgRes,plantId ,canWater,appWidgetIds);
+        // Update them again as soon as any plant changes, rather than periodically
+        if (appWidgetIds.length > 0) PlantWidgetScheduler.scheduleNextUpdate(this);
+        else PlantWidgetScheduler.cancelUpdates(this);
     }
 }
@@ -22,39 +22,149 @@ import android.appwidget.AppWidgetManager;
 import android.appwidget.AppWidgetProvider;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.util.Log;
+import android.util.SparseArray;
 import android.view.View;
 import android.widget.RemoteViews;
 
 import com.example.android.mygarden.provider.PlantContract;
-import com.example.android.mygarden.ui.MainActivity;
-import com.example.android.mygarden.ui.PlantDetailActivity;
+
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PlantWidgetProvider extends AppWidgetProvider {
 
-    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    // Widgets narrower than this (in dp) show a single plant, wider ones the garden grid
+    private static final int MIN_GRID_WIDTH = 300;
+    // Minimum and preferred width (in dp) of a garden grid column
+    private static final int MIN_GRID_COLUMNS = 4;
+    private static final int GRID_COLUMN_WIDTH = 75;
+    // Layout columns of each widget (0 for single plant mode), keyed by appWidgetId
+    private static final String LAYOUT_PREFS_NAME = "plant_widget_layouts";
+
+    // Activities opened from the widgets, referenced by name so that the widget code never
+    // loads the UI classes, and the support libraries they extend
+    private static final String MAIN_ACTIVITY = "com.example.android.mygarden.ui.MainActivity";
+    private static final String PLANT_DETAIL_ACTIVITY = "com.example.android.mygarden.ui.PlantDetailActivity";
+
+    // Last state pushed to each widget, keyed by appWidgetId and guarded by itself
+    private static final SparseArray<WidgetState> sRenderedStates = new SparseArray<>();
+
+    // Update metrics for this process
+    private static final AtomicInteger sSkippedUpdates = new AtomicInteger();
+    private static final AtomicInteger sPartialUpdates = new AtomicInteger();
+    private static final AtomicInteger sFullUpdates = new AtomicInteger();
+
     static void updateAppWidget(Context context, AppWidgetManager appWidgetManager,
                                 int imgRes, long plantId, boolean showWater, int appWidgetId) {
-        // Get current width to decide on single plant vs garden grid view
-        Bundle options = appWidgetManager.getAppWidgetOptions(appWidgetId);
-        int width = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
-        RemoteViews rv;
-        if (width < 300) {
-            rv = getSinglePlantRemoteView(context, imgRes, plantId, showWater);
+        // Get the cached layout to decide on single plant vs garden grid view
+        int columns = getLayoutColumns(context, appWidgetManager, appWidgetId);
+        WidgetState newState = columns == 0
+                ? new WidgetState(0, imgRes, plantId, showWater)
+                : new WidgetState(columns, 0, PlantContract.INVALID_PLANT_ID, false);
+        WidgetState oldState;
+        synchronized (sRenderedStates) {
+            oldState = sRenderedStates.get(appWidgetId);
+            sRenderedStates.put(appWidgetId, newState);
+        }
+        if (newState.equals(oldState)) {
+            // The widget already shows this state
+            sSkippedUpdates.incrementAndGet();
+        } else if (oldState != null && !oldState.isGridMode() && !newState.isGridMode()
+                && oldState.plantId == newState.plantId) {
+            // Same plant, so the click handlers are still valid and only the changed views are sent
+            appWidgetManager.partiallyUpdateAppWidget(appWidgetId,
+                    getSinglePlantPartialRemoteView(context, oldState, newState));
+            sPartialUpdates.incrementAndGet();
         } else {
-            rv = getGardenGridRemoteView(context);
+            RemoteViews rv;
+            if (!newState.isGridMode()) {
+                rv = getSinglePlantRemoteView(context, imgRes, plantId, showWater);
+            } else {
+                rv = getGardenGridRemoteView(context, columns, appWidgetId);
+            }
+            appWidgetManager.updateAppWidget(appWidgetId, rv);
+            sFullUpdates.incrementAndGet();
         }
-        appWidgetManager.updateAppWidget(appWidgetId, rv);
     }
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        // The host may have lost what was rendered (e.g. after a restart), so push everything again
+        forgetRenderedStates(appWidgetIds);
         //Start the intent service update widget action, the service takes care of updating the widgets UI
         PlantWateringService.startActionUpdatePlantWidgets(context);
     }
 
+    /**
+     * Returns the number of widget updates skipped because nothing changed
+     */
+    public static int getSkippedUpdateCount() {
+        return sSkippedUpdates.get();
+    }
+
+    /**
+     * Returns the number of widget updates pushed with partiallyUpdateAppWidget
+     */
+    public static int getPartialUpdateCount() {
+        return sPartialUpdates.get();
+    }
+
+    /**
+     * Returns the number of widget updates pushed with updateAppWidget
+     */
+    public static int getFullUpdateCount() {
+        return sFullUpdates.get();
+    }
+
+    /**
+     * Returns the number of grid columns of the widget, or 0 in single plant mode, as cached
+     * by onAppWidgetOptionsChanged. The widget options are only queried if nothing is cached.
+     *
+     * @param context          The context
+     * @param appWidgetManager The widget manager
+     * @param appWidgetId      The widget Id
+     * @return The number of grid columns, 0 for single plant mode
+     */
+    private static int getLayoutColumns(Context context, AppWidgetManager appWidgetManager,
+                                        int appWidgetId) {
+        SharedPreferences layouts = context.getSharedPreferences(LAYOUT_PREFS_NAME, Context.MODE_PRIVATE);
+        String key = String.valueOf(appWidgetId);
+        int columns = layouts.getInt(key, -1);
+        if (columns < 0) {
+            columns = getLayoutColumns(getWidgetOptions(appWidgetManager, appWidgetId));
+            layouts.edit().putInt(key, columns).apply();
+        }
+        return columns;
+    }
+
+    /**
+     * Classifies the widget layout from its options
+     *
+     * @param options The widget options
+     * @return The number of grid columns, 0 for single plant mode
+     */
+    private static int getLayoutColumns(Bundle options) {
+        int width = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
+        if (width < MIN_GRID_WIDTH) return 0;
+        return Math.max(MIN_GRID_COLUMNS, width / GRID_COLUMN_WIDTH);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static Bundle getWidgetOptions(AppWidgetManager appWidgetManager, int appWidgetId) {
+        return appWidgetManager.getAppWidgetOptions(appWidgetId);
+    }
+
+    private static void forgetRenderedStates(int[] appWidgetIds) {
+        synchronized (sRenderedStates) {
+            for (int appWidgetId : appWidgetIds) {
+                sRenderedStates.remove(appWidgetId);
+            }
+        }
+    }
+
     /**
      * Updates all widget instances given the widget Ids and display information
      *
@@ -70,6 +180,31 @@ public class PlantWidgetProvider extends AppWidgetProvider {
         for (int appWidgetId : appWidgetIds) {
             updateAppWidget(context, appWidgetManager, imgRes, plantId, showWater, appWidgetId);
         }
+        // Trigger data update to handle the GridView widgets and force a data refresh
+        int[] gridWidgetIds = getGridWidgetIds(appWidgetIds);
+        if (gridWidgetIds.length > 0) {
+            appWidgetManager.notifyAppWidgetViewDataChanged(gridWidgetIds, R.id.widget_grid_view);
+        }
+    }
+
+    /**
+     * Returns the widgets among the given ones last rendered in GridView mode
+     *
+     * @param appWidgetIds The widget Ids
+     * @return The Ids of the GridView mode widgets
+     */
+    private static int[] getGridWidgetIds(int[] appWidgetIds) {
+        int[] gridWidgetIds = new int[appWidgetIds.length];
+        int count = 0;
+        synchronized (sRenderedStates) {
+            for (int appWidgetId : appWidgetIds) {
+                WidgetState state = sRenderedStates.get(appWidgetId);
+                if (state != null && state.isGridMode()) gridWidgetIds[count++] = appWidgetId;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(gridWidgetIds, 0, result, 0, count);
+        return result;
     }
 
     /**
@@ -86,11 +221,10 @@ public class PlantWidgetProvider extends AppWidgetProvider {
         // or the MainActivity if plant ID is invalid
         Intent intent;
         if (plantId == PlantContract.INVALID_PLANT_ID) {
-            intent = new Intent(context, MainActivity.class);
+            intent = new Intent().setClassName(context, MAIN_ACTIVITY);
         } else { // Set on click to open the corresponding detail activity
-            Log.d(PlantWidgetProvider.class.getSimpleName(), "plantId=" + plantId);
-            intent = new Intent(context, PlantDetailActivity.class);
-            intent.putExtra(PlantDetailActivity.EXTRA_PLANT_ID, plantId);
+            intent = new Intent().setClassName(context, PLANT_DETAIL_ACTIVITY);
+            intent.putExtra(PlantContract.EXTRA_PLANT_ID, plantId);
         }
         PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
         // Construct the RemoteViews object
@@ -113,19 +247,47 @@ public class PlantWidgetProvider extends AppWidgetProvider {
         return views;
     }
 
+    /**
+     * Creates and returns the RemoteViews updating only the views of a single plant mode widget
+     * that differ between the two states of the same plant
+     *
+     * @param context  The context
+     * @param oldState The state the widget currently shows
+     * @param newState The state to show
+     * @return The RemoteViews for partiallyUpdateAppWidget
+     */
+    private static RemoteViews getSinglePlantPartialRemoteView(Context context, WidgetState oldState,
+                                                               WidgetState newState) {
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.plant_widget);
+        if (oldState.imgRes != newState.imgRes) {
+            views.setImageViewResource(R.id.widget_plant_image, newState.imgRes);
+        }
+        if (oldState.showWater != newState.showWater) {
+            views.setViewVisibility(R.id.widget_water_button,
+                    newState.showWater ? View.VISIBLE : View.INVISIBLE);
+        }
+        return views;
+    }
+
     /**
      * Creates and returns the RemoteViews to be displayed in the GridView mode widget
      *
-     * @param context The context
+     * @param context     The context
+     * @param columns     The number of grid columns
+     * @param appWidgetId The widget Id, which the grid's factory notifies of its data changes
      * @return The RemoteViews for the GridView mode widget
      */
-    private static RemoteViews getGardenGridRemoteView(Context context) {
+    private static RemoteViews getGardenGridRemoteView(Context context, int columns, int appWidgetId) {
         RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_grid_view);
-        // Set the GridWidgetService intent to act as the adapter for the GridView
+        views.setInt(R.id.widget_grid_view, "setNumColumns", columns);
+        // Set the GridWidgetService intent to act as the adapter for the GridView. The data
+        // makes the intents of different widgets differ, so each gets its own factory
         Intent intent = new Intent(context, GridWidgetService.class);
+        intent.putExtra(AppWidgetManager.EXTRA_APPWIDGET_ID, appWidgetId);
+        intent.setData(Uri.parse(intent.toUri(Intent.URI_INTENT_SCHEME)));
         views.setRemoteAdapter(R.id.widget_grid_view, intent);
         // Set the PlantDetailActivity intent to launch when clicked
-        Intent appIntent = new Intent(context, PlantDetailActivity.class);
+        Intent appIntent = new Intent().setClassName(context, PLANT_DETAIL_ACTIVITY);
         PendingIntent appPendingIntent = PendingIntent.getActivity(context, 0, appIntent, PendingIntent.FLAG_UPDATE_CURRENT);
         views.setPendingIntentTemplate(R.id.widget_grid_view, appPendingIntent);
         // Handle empty gardens
@@ -137,13 +299,24 @@ public class PlantWidgetProvider extends AppWidgetProvider {
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        PlantWateringService.startActionUpdatePlantWidgets(context);
+        // Cache the new layout and re-render only the resized widget
+        context.getSharedPreferences(LAYOUT_PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putInt(String.valueOf(appWidgetId), getLayoutColumns(newOptions))
+                .apply();
+        PlantWateringService.startActionUpdatePlantWidget(context, appWidgetId);
         super.onAppWidgetOptionsChanged(context, appWidgetManager, appWidgetId, newOptions);
     }
 
     @Override
     public void onDeleted(Context context, int[] appWidgetIds) {
         // Perform any action when one or more AppWidget instances have been deleted
+        forgetRenderedStates(appWidgetIds);
+        SharedPreferences.Editor layouts =
+                context.getSharedPreferences(LAYOUT_PREFS_NAME, Context.MODE_PRIVATE).edit();
+        for (int appWidgetId : appWidgetIds) {
+            layouts.remove(String.valueOf(appWidgetId));
+        }
+        layouts.apply();
     }
 
     @Override
@@ -154,6 +327,46 @@ public class PlantWidgetProvider extends AppWidgetProvider {
     @Override
     public void onDisabled(Context context) {
         // Perform any action when the last AppWidget instance for this provider is deleted
+        PlantWidgetScheduler.cancelUpdates(context);
     }
 
+    /**
+     * What a widget displays, used to skip or reduce updates that change nothing
+     */
+    private static class WidgetState {
+
+        final int columns;
+        final int imgRes;
+        final long plantId;
+        final boolean showWater;
+
+        WidgetState(int columns, int imgRes, long plantId, boolean showWater) {
+            this.columns = columns;
+            this.imgRes = imgRes;
+            this.plantId = plantId;
+            this.showWater = showWater;
+        }
+
+        boolean isGridMode() {
+            return columns > 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof WidgetState)) return false;
+            WidgetState other = (WidgetState) o;
+            return columns == other.columns && imgRes == other.imgRes
+                    && plantId == other.plantId && showWater == other.showWater;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = columns;
+            result = 31 * result + imgRes;
+            result = 31 * result + (int) (plantId ^ (plantId >>> 32));
+            result = 31 * result + (showWater ? 1 : 0);
+            return result;
+        }
+    }
 }
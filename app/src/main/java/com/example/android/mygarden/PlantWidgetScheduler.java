@@ -0,0 +1,96 @@
+package com.example.android.mygarden;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Build;
+
+import com.example.android.mygarden.provider.PlantContract;
+
+/**
+ * Schedules the widget update for the next time a plant changes status or size, instead of
+ * polling at a fixed period
+ */
+public class PlantWidgetScheduler {
+
+    /**
+     * Sets a single alarm at the next instant any plant's image or water button changes,
+     * replacing the previously scheduled one. The alarm does not wake the device up, it is
+     * delivered as soon as the device is awake again.
+     *
+     * @param context The context
+     */
+    public static void scheduleNextUpdate(Context context) {
+        long nextTransitionAt = queryNextTransitionTime(context);
+        if (nextTransitionAt == Long.MAX_VALUE) {
+            cancelUpdates(context);
+            return;
+        }
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent updateIntent = getUpdatePendingIntent(context);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            setExact(alarmManager, nextTransitionAt, updateIntent);
+        } else {
+            alarmManager.set(AlarmManager.RTC, nextTransitionAt, updateIntent);
+        }
+    }
+
+    /**
+     * Cancels the scheduled widget update, if any
+     *
+     * @param context The context
+     */
+    public static void cancelUpdates(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.cancel(getUpdatePendingIntent(context));
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void setExact(AlarmManager alarmManager, long triggerAt, PendingIntent operation) {
+        // Alarms set with set() may be deferred (batched) from KitKat onwards
+        alarmManager.setExact(AlarmManager.RTC, triggerAt, operation);
+    }
+
+    private static PendingIntent getUpdatePendingIntent(Context context) {
+        Intent intent = new Intent(context, PlantWateringService.class);
+        intent.setAction(PlantWateringService.ACTION_UPDATE_PLANT_WIDGETS);
+        return PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    /**
+     * Returns the next time at which a plant changes status or size
+     *
+     * @param context The context
+     * @return The time in milliseconds, or Long.MAX_VALUE if no plant will change anymore
+     */
+    private static long queryNextTransitionTime(Context context) {
+        Cursor cursor = context.getContentResolver().query(
+                PlantContract.PlantEntry.CONTENT_NEXT_TRANSITION_URI, null, null, null, null);
+        if (cursor == null) return Long.MAX_VALUE;
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) return Long.MAX_VALUE;
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+
+/**
+ * Physically removes the plants that were cut, which PlantContentProvider only marks deleted
+ * so that cutting stays a single row update. Rows are removed in small batches so writers
+ * are never blocked for long, and the freed pages are then given back to the file system.
+ * <p>
+ * Does disk I/O and must not be called on the main thread.
+ */
+public class GardenCompactor {
+
+    // PRAGMA auto_vacuum value letting incremental_vacuum release the free pages
+    static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // Rows deleted per statement, each statement being its own short transaction
+    private static final int DELETE_BATCH_SIZE = 500;
+    // Free pages worth releasing, below that the pages are left for future plants
+    private static final int MIN_FREE_PAGES = 64;
+
+    // Batches are found by walking the _id order from the end of the previous batch, so the
+    // rows before it are not scanned again. Argument: the last _id of the previous batch.
+    // Returns the last _id of the next batch, 0 if there is none
+    static final String SQL_NEXT_BATCH_END = "SELECT MAX(" + PlantEntry._ID + ") FROM"
+            + " (SELECT " + PlantEntry._ID + " FROM " + PlantEntry.TABLE_NAME
+            + " WHERE " + PlantEntry._ID + ">? AND " + PlantEntry.COLUMN_DELETED + "=1"
+            + " ORDER BY " + PlantEntry._ID + " LIMIT " + DELETE_BATCH_SIZE + ")";
+    // Arguments: the last _id of the previous batch, the last _id of this batch
+    private static final String SQL_DELETE_BATCH = "DELETE FROM " + PlantEntry.TABLE_NAME
+            + " WHERE " + PlantEntry._ID + ">? AND " + PlantEntry._ID + "<=?"
+            + " AND " + PlantEntry.COLUMN_DELETED + "=1";
+
+    /**
+     * Deletes all the cut plants, then releases the free pages of the database file if
+     * there are enough of them
+     *
+     * @param context The context
+     * @return The number of plants deleted
+     */
+    public static int compact(Context context) {
+        SQLiteDatabase db = PlantDbHelper.getInstance(context).getWritableDatabase();
+        int plantsDeleted = 0;
+        SQLiteStatement nextBatchEnd = db.compileStatement(SQL_NEXT_BATCH_END);
+        SQLiteStatement deleteBatch = db.compileStatement(SQL_DELETE_BATCH);
+        try {
+            long batchStart = 0;
+            while (true) {
+                nextBatchEnd.bindLong(1, batchStart);
+                long batchEnd = nextBatchEnd.simpleQueryForLong();
+                if (batchEnd <= batchStart) break;
+                deleteBatch.bindLong(1, batchStart);
+                deleteBatch.bindLong(2, batchEnd);
+                plantsDeleted += deleteBatch.executeUpdateDelete();
+                // Plants cut meanwhile before the batch are left for the next compaction
+                batchStart = batchEnd;
+            }
+        } finally {
+            nextBatchEnd.close();
+            deleteBatch.close();
+        }
+        // Deleting cut plants does not change what queries return, so no change is notified
+
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+        if (freePages >= MIN_FREE_PAGES) {
+            if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+                // Databases created before auto_vacuum was set need a full VACUUM, once,
+                // to switch to incremental mode
+                db.execSQL("PRAGMA auto_vacuum=" + AUTO_VACUUM_INCREMENTAL);
+                db.execSQL("VACUUM");
+            } else {
+                // The pragma frees one page per step, so step through all of its rows
+                Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null);
+                try {
+                    cursor.getCount();
+                } finally {
+                    cursor.close();
+                }
+            }
+        }
+        return plantsDeleted;
+    }
+}
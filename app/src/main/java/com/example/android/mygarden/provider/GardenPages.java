@@ -0,0 +1,152 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+
+/**
+ * Reads the garden a page at a time, in the order it is displayed (by creation time, then Id),
+ * with only the columns needed to render the plants
+ */
+public class GardenPages {
+
+    public static final String[] PLANT_PROJECTION = {
+            PlantEntry._ID,
+            PlantEntry.COLUMN_PLANT_TYPE,
+            PlantEntry.COLUMN_CREATION_TIME,
+            PlantEntry.COLUMN_LAST_WATERED_TIME
+    };
+
+    public static final String SORT_ORDER =
+            PlantEntry.COLUMN_CREATION_TIME + ", " + PlantEntry._ID;
+
+    // Rows displayed after the given (creation time, Id) key, see selectionArgsAfter. The
+    // top-level range on the creation time lets SQLite search the index from the key, where
+    // an OR of the two cases would scan it from the first row
+    static final String SELECTION_AFTER_KEY =
+            PlantEntry.COLUMN_CREATION_TIME + ">=?1 AND (" + PlantEntry.COLUMN_CREATION_TIME
+                    + ">?1 OR " + PlantEntry._ID + ">?2)";
+
+    // Rows displayed up to and including the given (creation time, Id) key, the upper bound
+    // of the same index range, see selectionArgsBetween
+    static final String SELECTION_BETWEEN_KEYS = SELECTION_AFTER_KEY + " AND "
+            + PlantEntry.COLUMN_CREATION_TIME + "<=?3 AND (" + PlantEntry.COLUMN_CREATION_TIME
+            + "<?3 OR " + PlantEntry._ID + "<=?4)";
+
+    /**
+     * Returns the number of plants in the garden
+     *
+     * @param resolver The content resolver
+     * @return The number of plants
+     */
+    public static int queryCount(ContentResolver resolver) {
+        Cursor cursor = resolver.query(PlantEntry.CONTENT_URI,
+                new String[]{"COUNT(*)"}, null, null, null);
+        if (cursor == null) return 0;
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the page of plants starting at the given position
+     *
+     * @param resolver The content resolver
+     * @param offset   The position of the first plant
+     * @param limit    The maximum number of plants
+     * @return The page of plants
+     */
+    public static GardenSnapshot queryPage(ContentResolver resolver, int offset, int limit) {
+        return toSnapshot(resolver.query(PlantEntry.buildPageUri(offset, limit),
+                PLANT_PROJECTION, null, null, SORT_ORDER));
+    }
+
+    /**
+     * Returns the page of plants displayed right after the given plant. Unlike
+     * {@link #queryPage}, the cost does not grow with the position of the page.
+     *
+     * @param resolver  The content resolver
+     * @param createdAt The creation time of the plant before the page
+     * @param plantId   The Id of the plant before the page
+     * @param limit     The maximum number of plants
+     * @return The page of plants
+     */
+    public static GardenSnapshot queryPageAfter(ContentResolver resolver, long createdAt,
+                                                long plantId, int limit) {
+        return toSnapshot(resolver.query(PlantEntry.buildPageUri(0, limit),
+                PLANT_PROJECTION, SELECTION_AFTER_KEY, selectionArgsAfter(createdAt, plantId),
+                SORT_ORDER));
+    }
+
+    /**
+     * Returns the plants displayed after the first given plant, up to and including the last
+     * one, however many they are now. Used to reload a displayed range of the garden after
+     * plants were added or removed in it.
+     *
+     * @param resolver         The content resolver
+     * @param afterCreatedAt   The creation time of the plant before the range
+     * @param afterPlantId     The Id of the plant before the range, or INVALID_PLANT_ID to
+     *                         start at the first plant
+     * @param throughCreatedAt The creation time of the last plant of the range
+     * @param throughPlantId   The Id of the last plant of the range
+     * @return The plants of the range
+     */
+    public static GardenSnapshot queryRange(ContentResolver resolver, long afterCreatedAt,
+                                            long afterPlantId, long throughCreatedAt,
+                                            long throughPlantId) {
+        if (afterPlantId == PlantContract.INVALID_PLANT_ID) afterCreatedAt = Long.MIN_VALUE;
+        return toSnapshot(resolver.query(PlantEntry.CONTENT_URI, PLANT_PROJECTION,
+                SELECTION_BETWEEN_KEYS, selectionArgsBetween(afterCreatedAt, afterPlantId,
+                        throughCreatedAt, throughPlantId), SORT_ORDER));
+    }
+
+    /**
+     * Returns the arguments of the selection of the plants displayed after the given plant
+     *
+     * @param createdAt The creation time of the plant
+     * @param plantId   The Id of the plant
+     * @return The arguments of SELECTION_AFTER_KEY
+     */
+    static String[] selectionArgsAfter(long createdAt, long plantId) {
+        return new String[]{String.valueOf(createdAt), String.valueOf(plantId)};
+    }
+
+    /**
+     * Returns the arguments of the selection of the plants displayed between the given plants
+     *
+     * @return The arguments of SELECTION_BETWEEN_KEYS
+     */
+    static String[] selectionArgsBetween(long afterCreatedAt, long afterPlantId,
+                                         long throughCreatedAt, long throughPlantId) {
+        return new String[]{String.valueOf(afterCreatedAt), String.valueOf(afterPlantId),
+                String.valueOf(throughCreatedAt), String.valueOf(throughPlantId)};
+    }
+
+        private static GardenSnapshot toSnapshot(Cursor cursor) {
+        if (cursor == null) return GardenSnapshot.EMPTY;
+        try {
+            return GardenSnapshot.from(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.database.Cursor;
+
+import java.util.Arrays;
+
+/**
+ * Immutable copy of plant rows held in primitive arrays, so it can outlive its cursor
+ * and be shared across threads
+ */
+public final class GardenSnapshot {
+
+    public static final GardenSnapshot EMPTY = new GardenSnapshot(0);
+
+    private final int mCount;
+    private final long[] mIds;
+    private final int[] mTypes;
+    private final long[] mCreatedAt;
+    private final long[] mWateredAt;
+
+    private GardenSnapshot(int count) {
+        mCount = count;
+        mIds = new long[count];
+        mTypes = new int[count];
+        mCreatedAt = new long[count];
+        mWateredAt = new long[count];
+    }
+
+    /**
+     * Wraps the given arrays, which must have the same length and must not be modified after
+     */
+    GardenSnapshot(long[] ids, int[] types, long[] createdAt, long[] wateredAt) {
+        mCount = ids.length;
+        mIds = ids;
+        mTypes = types;
+        mCreatedAt = createdAt;
+        mWateredAt = wateredAt;
+    }
+
+    /**
+     * Copies all rows of the cursor, leaving the cursor open
+     *
+     * @param cursor The plants cursor, may be null
+     * @return The snapshot of the cursor rows
+     */
+    public static GardenSnapshot from(Cursor cursor) {
+        if (cursor == null || cursor.getCount() == 0) return EMPTY;
+        PlantCursor plantCursor = PlantCursor.wrap(cursor);
+        GardenSnapshot snapshot = new GardenSnapshot(plantCursor.getCount());
+        for (int i = 0; i < snapshot.mCount && plantCursor.moveToPosition(i); i++) {
+            snapshot.mIds[i] = plantCursor.getPlantId();
+            snapshot.mTypes[i] = plantCursor.getPlantType();
+            snapshot.mCreatedAt[i] = plantCursor.getCreatedAt();
+            snapshot.mWateredAt[i] = plantCursor.getWateredAt();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns a snapshot with the rows of the second snapshot after those of the first
+     *
+     * @param first  The leading rows
+     * @param second The trailing rows
+     * @return The combined snapshot
+     */
+    public static GardenSnapshot concat(GardenSnapshot first, GardenSnapshot second) {
+        if (second.mCount == 0) return first;
+        if (first.mCount == 0) return second;
+        GardenSnapshot snapshot = new GardenSnapshot(first.mCount + second.mCount);
+        copyRows(first, snapshot, 0);
+        copyRows(second, snapshot, first.mCount);
+        return snapshot;
+    }
+
+    /**
+     * Returns the rows between the given positions
+     *
+     * @param start The position of the first row, inclusive
+     * @param end   The position of the last row, exclusive
+     * @return The snapshot of those rows
+     */
+    public GardenSnapshot slice(int start, int end) {
+        if (start == 0 && end == mCount) return this;
+        return new GardenSnapshot(Arrays.copyOfRange(mIds, start, end),
+                Arrays.copyOfRange(mTypes, start, end),
+                Arrays.copyOfRange(mCreatedAt, start, end),
+                Arrays.copyOfRange(mWateredAt, start, end));
+    }
+
+    /**
+     * Returns the position of the first row displayed after the given plant, the rows being
+     * in display order (by creation time, then Id)
+     *
+     * @param createdAt The creation time of the plant
+     * @param plantId   The Id of the plant, which does not need to be in the snapshot
+     * @return The position, or the row count if no row comes after the plant
+     */
+    public int indexAfter(long createdAt, long plantId) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mCreatedAt[mid] < createdAt
+                    || (mCreatedAt[mid] == createdAt && mIds[mid] <= plantId)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void copyRows(GardenSnapshot source, GardenSnapshot target, int position) {
+        System.arraycopy(source.mIds, 0, target.mIds, position, source.mCount);
+        System.arraycopy(source.mTypes, 0, target.mTypes, position, source.mCount);
+        System.arraycopy(source.mCreatedAt, 0, target.mCreatedAt, position, source.mCount);
+        System.arraycopy(source.mWateredAt, 0, target.mWateredAt, position, source.mCount);
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public long getPlantId(int position) {
+        return mIds[position];
+    }
+
+    public int getPlantType(int position) {
+        return mTypes[position];
+    }
+
+    public long getCreatedAt(int position) {
+        return mCreatedAt[position];
+    }
+
+    public long getWateredAt(int position) {
+        return mWateredAt[position];
+    }
+
+    /**
+     * Returns whether the plants at the given positions have the same type and timestamps
+     *
+     * @param position      Position in this snapshot
+     * @param other         The snapshot to compare with
+     * @param otherPosition Position in the other snapshot
+     * @return True if both rows hold the same values
+     */
+    public boolean contentsEqual(int position, GardenSnapshot other, int otherPosition) {
+        return mTypes[position] == other.mTypes[otherPosition]
+                && mCreatedAt[position] == other.mCreatedAt[otherPosition]
+                && mWateredAt[position] == other.mWateredAt[otherPosition];
+    }
+}
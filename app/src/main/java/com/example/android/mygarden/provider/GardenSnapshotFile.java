@@ -0,0 +1,272 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.mygarden.utils.PerfMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The first plants of the garden in display order, along with the garden size, saved to
+ * app-private storage by the components changing the garden, so the garden and the widgets
+ * can be drawn on process start without waiting for the database. Readers reconcile with
+ * the provider right after.
+ * <p>
+ * The file holds a header (magic number, version, garden size, number of saved plants, as
+ * ints) followed by the plant Ids, types, creation and last watered times as arrays. It is
+ * replaced atomically, so readers see either the previous or the new snapshot, and writers
+ * of all the app processes take turns through a lock file. Both operations do disk I/O and
+ * must not be called on the main thread.
+ */
+public final class GardenSnapshotFile {
+
+    private static final String TAG = GardenSnapshotFile.class.getSimpleName();
+
+    // Enough plants for the first pages of the main grid and of the widget grid
+    public static final int MAX_PLANTS = 256;
+
+    private static final String FILE_NAME = "garden_snapshot";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String LOCK_FILE_SUFFIX = ".lock";
+    private static final int MAGIC = 0x4D594753; // "MYGS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 * 4;
+    private static final int ROW_SIZE = 8 + 4 + 8 + 8;
+
+    // Serializes the writers of this process, FileChannel locks are held per process
+    private static final Object sWriteLock = new Object();
+
+    private final GardenSnapshot mSnapshot;
+    private final int mPlantCount;
+
+    private GardenSnapshotFile(GardenSnapshot snapshot, int plantCount) {
+        mSnapshot = snapshot;
+        mPlantCount = plantCount;
+    }
+
+    /**
+     * Returns the saved plants, the first ones of the garden in display order
+     */
+    public GardenSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Returns the number of plants in the garden when the snapshot was saved
+     */
+    public int getPlantCount() {
+        return mPlantCount;
+    }
+
+    /**
+     * Reads the last saved snapshot
+     *
+     * @param context The context
+     * @return The snapshot, or null if there is none or it cannot be read
+     */
+    public static GardenSnapshotFile read(Context context) {
+        return read(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * Reads the snapshot saved in the given file, see {@link #read(Context)}
+     */
+    static GardenSnapshotFile read(File file) {
+        if (!file.exists()) return null;
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size < HEADER_SIZE) return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+            int plantCount = buffer.getInt();
+            int count = buffer.getInt();
+            if (count < 0 || count > plantCount || size != HEADER_SIZE + (long) count * ROW_SIZE) {
+                return null;
+            }
+            long[] ids = new long[count];
+            int[] types = new int[count];
+            long[] createdAt = new long[count];
+            long[] wateredAt = new long[count];
+            buffer.asLongBuffer().get(ids);
+            buffer.position(buffer.position() + count * 8);
+            buffer.asIntBuffer().get(types);
+            buffer.position(buffer.position() + count * 4);
+            buffer.asLongBuffer().get(createdAt);
+            buffer.position(buffer.position() + count * 8);
+            buffer.asLongBuffer().get(wateredAt);
+            return new GardenSnapshotFile(
+                    new GardenSnapshot(ids, types, createdAt, wateredAt), plantCount);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read the garden snapshot", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Saves the first plants of the garden, replacing the previous snapshot
+     *
+     * @param context    The context
+     * @param snapshot   The first plants of the garden, only MAX_PLANTS of them are saved
+     * @param plantCount The number of plants in the garden
+     * @throws IOException if the snapshot cannot be written, the previous one is kept then
+     */
+    public static void write(Context context, GardenSnapshot snapshot, int plantCount)
+            throws IOException {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        synchronized (sWriteLock) {
+            RandomAccessFile lock = lock(file);
+            try {
+                write(file, snapshot, plantCount);
+            } finally {
+                closeQuietly(lock);
+            }
+        }
+    }
+
+    /**
+     * Saves the plants in the given file, see {@link #write(Context, GardenSnapshot, int)}.
+     * Each call writes its own temporary file, so concurrent writers never share a file
+     * being mapped, and the last one renamed wins.
+     */
+    static void write(File file, GardenSnapshot snapshot, int plantCount) throws IOException {
+        int count = Math.min(snapshot.getCount(), MAX_PLANTS);
+        File tempFile = File.createTempFile(file.getName(), TEMP_FILE_SUFFIX, file.getParentFile());
+        RandomAccessFile out;
+        try {
+            out = new RandomAccessFile(tempFile, "rw");
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        boolean written = false;
+        try {
+            int size = HEADER_SIZE + count * ROW_SIZE;
+            out.setLength(size);
+            MappedByteBuffer buffer = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(Math.max(plantCount, count)).putInt(count);
+            for (int i = 0; i < count; i++) buffer.putLong(snapshot.getPlantId(i));
+            for (int i = 0; i < count; i++) buffer.putInt(snapshot.getPlantType(i));
+            for (int i = 0; i < count; i++) buffer.putLong(snapshot.getCreatedAt(i));
+            for (int i = 0; i < count; i++) buffer.putLong(snapshot.getWateredAt(i));
+            buffer.force();
+            written = true;
+        } finally {
+            out.close();
+            if (!written) tempFile.delete();
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    /**
+     * Takes the lock of the snapshot file shared by all the processes of the app, waiting
+     * for the other writers to be done. Must be called holding sWriteLock.
+     *
+     * @param file The snapshot file
+     * @return The lock file, closing it releases the lock
+     * @throws IOException if the lock cannot be taken
+     */
+    private static RandomAccessFile lock(File file) throws IOException {
+        RandomAccessFile lock = new RandomAccessFile(file.getPath() + LOCK_FILE_SUFFIX, "rw");
+        try {
+            lock.getChannel().lock();
+        } catch (IOException e) {
+            closeQuietly(lock);
+            throw e;
+        }
+        return lock;
+    }
+
+    /**
+     * Saves a snapshot of the garden as it is in the provider, to be called after changing the
+     * garden. The file is only rewritten if the saved plants changed, logging any failure.
+     *
+     * @param context The context
+     * @return True if the file was rewritten
+     */
+    public static boolean update(Context context) {
+        long start = PerfMetrics.begin(PerfMetrics.SERVICE_WRITE_SNAPSHOT);
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        synchronized (sWriteLock) {
+            RandomAccessFile lock = null;
+            try {
+                // The garden is queried under the lock, so that the last writer saves the
+                // latest garden rather than one it read before another writer
+                lock = lock(file);
+                ContentResolver resolver = context.getContentResolver();
+                int plantCount = GardenPages.queryCount(resolver);
+                GardenSnapshot snapshot = GardenPages.queryPage(resolver, 0, MAX_PLANTS);
+                // Reading the small saved file is much cheaper than rewriting and syncing it,
+                // and it may have been written by another process
+                GardenSnapshotFile saved = read(file);
+                if (saved != null && saved.holds(snapshot, plantCount)) return false;
+                write(file, snapshot, plantCount);
+                return true;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write the garden snapshot", e);
+                return false;
+            } finally {
+                closeQuietly(lock);
+                PerfMetrics.end(PerfMetrics.SERVICE_WRITE_SNAPSHOT, start);
+            }
+        }
+    }
+
+    /**
+     * Returns whether this is what saving the given plants would write
+     *
+     * @param snapshot   The first plants of the garden
+     * @param plantCount The number of plants in the garden
+     * @return True if the saved garden size and plants are the same
+     */
+    boolean holds(GardenSnapshot snapshot, int plantCount) {
+        int count = Math.min(snapshot.getCount(), MAX_PLANTS);
+        if (mPlantCount != Math.max(plantCount, count) || mSnapshot.getCount() != count) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (mSnapshot.getPlantId(i) != snapshot.getPlantId(i)
+                    || !mSnapshot.contentsEqual(i, snapshot, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file == null) return;
+        try {
+            file.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.UriMatcher;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.support.annotation.VisibleForTesting;
+
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.utils.PlantUtils;
+import com.example.android.mygarden.utils.PlantUtils.PlantSize;
+import com.example.android.mygarden.utils.PlantUtils.PlantStatus;
+
+import java.util.Arrays;
+
+/**
+ * In-memory model of the garden answering status and size questions without going through
+ * SQLite. Plants are held in primitive parallel arrays ordered by last watered time, plus a
+ * sorted copy of the creation times. Since a plant's status and size only depend on how old
+ * these timestamps are, every question becomes a binary search over the sorted timestamps.
+ * The model follows the provider's change notifications, reloading single plants when the
+ * notification names one.
+ */
+public class GardenStateEngine {
+
+    /**
+     * Notified on the engine thread after the model loaded the garden, and after it applied
+     * a change notification
+     */
+    public interface OnChangeListener {
+        void onGardenStateChanged();
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final UriMatcher sUriMatcher = PlantContentProvider.buildUriMatcher();
+
+    private static GardenStateEngine sInstance;
+
+    private final ContentResolver mResolver;
+    private final HandlerThread mThread;
+    private final ContentObserver mObserver;
+
+    // Plants ordered by last watered time, guarded by this
+    private int mCount;
+    private long[] mIds = new long[INITIAL_CAPACITY];
+    private int[] mTypes = new int[INITIAL_CAPACITY];
+    private long[] mCreatedAt = new long[INITIAL_CAPACITY];
+    private long[] mWateredAt = new long[INITIAL_CAPACITY];
+    // The creation times of the same plants, in ascending order
+    private long[] mCreatedAtSorted = new long[INITIAL_CAPACITY];
+    private boolean mLoaded;
+    private OnChangeListener mListener;
+
+    @VisibleForTesting
+    GardenStateEngine(Context context) {
+        mResolver = context.getApplicationContext().getContentResolver();
+        mThread = new HandlerThread(GardenStateEngine.class.getSimpleName(),
+                Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        Handler handler = new Handler(mThread.getLooper());
+        mObserver = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                onChange(selfChange, null);
+            }
+
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                onGardenChanged(uri);
+                notifyListener();
+            }
+        };
+        mResolver.registerContentObserver(PlantEntry.CONTENT_URI, true, mObserver);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                reloadAll();
+                notifyListener();
+            }
+        });
+    }
+
+    /**
+     * Stops following the garden and ends the engine thread
+     */
+    @VisibleForTesting
+    void shutdown() {
+        mResolver.unregisterContentObserver(mObserver);
+        mThread.quit();
+    }
+
+    /**
+     * Returns the engine of this process, which starts loading the garden in the background
+     * when first created
+     *
+     * @param context The context
+     * @return The garden state engine
+     */
+    public static synchronized GardenStateEngine getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new GardenStateEngine(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns whether the garden was loaded, before that the engine reports an empty garden
+     */
+    public synchronized boolean isLoaded() {
+        return mLoaded;
+    }
+
+    /**
+     * Waits for the garden to be loaded, on a background thread
+     *
+     * @param timeoutMillis The maximum time to wait
+     * @return True if the garden was loaded
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    public synchronized boolean awaitLoaded(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!mLoaded) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) return false;
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Sets the listener notified after the model followed a change of the garden, replacing
+     * the previous one
+     *
+     * @param listener The listener, or null
+     */
+    public synchronized void setOnChangeListener(OnChangeListener listener) {
+        mListener = listener;
+    }
+
+    private void notifyListener() {
+        OnChangeListener listener;
+        synchronized (this) {
+            listener = mListener;
+        }
+        if (listener != null) listener.onGardenStateChanged();
+    }
+
+    public synchronized int getPlantCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the number of plants in each status
+     *
+     * @param timeNow The current time
+     * @return The counts indexed by {@link PlantStatus#ordinal()}
+     */
+    public synchronized int[] getStatusCounts(long timeNow) {
+        int dead = countBefore(mWateredAt, timeNow - PlantUtils.MAX_AGE_WITHOUT_WATER);
+        int inDanger = countBefore(mWateredAt, timeNow - PlantUtils.DANGER_AGE_WITHOUT_WATER);
+        int[] counts = new int[PlantStatus.values().length];
+        counts[PlantStatus.DEAD.ordinal()] = dead;
+        counts[PlantStatus.DYING.ordinal()] = inDanger - dead;
+        counts[PlantStatus.ALIVE.ordinal()] = mCount - inDanger;
+        return counts;
+    }
+
+    /**
+     * Returns the number of plants of each size. Plants planted at the current time are not
+     * counted, as they are still an empty pot.
+     *
+     * @param timeNow The current time
+     * @return The counts indexed by {@link PlantSize#ordinal()}
+     */
+    public synchronized int[] getSizeCounts(long timeNow) {
+        int fullyGrown = countBefore(mCreatedAtSorted, timeNow - PlantUtils.FULLY_GROWN_AGE);
+        int juvenile = countBefore(mCreatedAtSorted, timeNow - PlantUtils.JUVENILE_AGE);
+        int tiny = countBefore(mCreatedAtSorted, timeNow - PlantUtils.TINY_AGE);
+        int[] counts = new int[PlantSize.values().length];
+        counts[PlantSize.FULLY_GROWN.ordinal()] = fullyGrown;
+        counts[PlantSize.JUVENILE.ordinal()] = juvenile - fullyGrown;
+        counts[PlantSize.TINY.ordinal()] = tiny - juvenile;
+        return counts;
+    }
+
+    /**
+     * Returns the Ids of the plants in danger, least recently watered first
+     *
+     * @param timeNow The current time
+     * @return The plant Ids
+     */
+    public synchronized long[] getDyingPlantIds(long timeNow) {
+        int from = countBefore(mWateredAt, timeNow - PlantUtils.MAX_AGE_WITHOUT_WATER);
+        int to = countBefore(mWateredAt, timeNow - PlantUtils.DANGER_AGE_WITHOUT_WATER);
+        return Arrays.copyOfRange(mIds, from, to);
+    }
+
+    /**
+     * Returns the next time at which any plant changes status, size or becomes waterable,
+     * matching the plants/next_transition URI of the provider
+     *
+     * @param timeNow The current time
+     * @return The time in milliseconds, or Long.MAX_VALUE if no plant will change anymore
+     */
+    public synchronized long getNextTransitionTime(long timeNow) {
+        long next = Long.MAX_VALUE;
+        next = Math.min(next, nextCrossing(mWateredAt, timeNow, PlantUtils.MIN_AGE_BETWEEN_WATER));
+        next = Math.min(next, nextCrossing(mWateredAt, timeNow, PlantUtils.DANGER_AGE_WITHOUT_WATER));
+        next = Math.min(next, nextCrossing(mWateredAt, timeNow, PlantUtils.MAX_AGE_WITHOUT_WATER));
+        next = Math.min(next, nextCrossing(mCreatedAtSorted, timeNow, PlantUtils.TINY_AGE));
+        next = Math.min(next, nextCrossing(mCreatedAtSorted, timeNow, PlantUtils.JUVENILE_AGE));
+        next = Math.min(next, nextCrossing(mCreatedAtSorted, timeNow, PlantUtils.FULLY_GROWN_AGE));
+        return next;
+    }
+
+    /**
+     * Returns the time the oldest timestamp that has not crossed the age yet will cross it
+     */
+    private long nextCrossing(long[] sortedTimes, long timeNow, long age) {
+        int index = countBefore(sortedTimes, timeNow - age);
+        return index < mCount ? sortedTimes[index] + age + 1 : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of the first mCount sorted times that are strictly lower than the key
+     */
+    private int countBefore(long[] sortedTimes, long key) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedTimes[mid] < key) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Applies a provider change notification, on the engine thread
+     *
+     * @param uri The changed URI, or null if unknown
+     */
+    private void onGardenChanged(Uri uri) {
+        if (uri != null && sUriMatcher.match(uri) == PlantContentProvider.PLANT_WITH_ID) {
+            reloadPlant(ContentUris.parseId(uri));
+        } else {
+            reloadAll();
+        }
+    }
+
+    private void reloadAll() {
+        PlantCursor cursor = PlantCursor.wrap(mResolver.query(PlantEntry.CONTENT_URI,
+                GardenPages.PLANT_PROJECTION, null, null, PlantEntry.COLUMN_LAST_WATERED_TIME));
+        if (cursor == null) return;
+        try {
+            int count = cursor.getCount();
+            int capacity = Math.max(INITIAL_CAPACITY, count);
+            long[] ids = new long[capacity];
+            int[] types = new int[capacity];
+            long[] createdAt = new long[capacity];
+            long[] wateredAt = new long[capacity];
+            for (int i = 0; i < count && cursor.moveToPosition(i); i++) {
+                ids[i] = cursor.getPlantId();
+                types[i] = cursor.getPlantType();
+                createdAt[i] = cursor.getCreatedAt();
+                wateredAt[i] = cursor.getWateredAt();
+            }
+            long[] createdAtSorted = Arrays.copyOf(createdAt, capacity);
+            Arrays.sort(createdAtSorted, 0, count);
+            synchronized (this) {
+                mCount = count;
+                mIds = ids;
+                mTypes = types;
+                mCreatedAt = createdAt;
+                mWateredAt = wateredAt;
+                mCreatedAtSorted = createdAtSorted;
+                mLoaded = true;
+                notifyAll();
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void reloadPlant(long plantId) {
+        PlantCursor cursor = PlantCursor.wrap(mResolver.query(
+                ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId),
+                GardenPages.PLANT_PROJECTION, null, null, null));
+        if (cursor == null) return;
+        try {
+            synchronized (this) {
+                removePlant(plantId);
+                if (cursor.moveToFirst()) {
+                    insertPlant(plantId, cursor.getPlantType(), cursor.getCreatedAt(),
+                            cursor.getWateredAt());
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Removes the plant from the arrays, if present. Must be called holding the lock. The
+     * plant is looked up by a linear scan, which costs no more than shifting the arrays.
+     */
+    private void removePlant(long plantId) {
+        int index = -1;
+        for (int i = 0; i < mCount; i++) {
+            if (mIds[i] == plantId) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) return;
+        int sortedIndex = countBefore(mCreatedAtSorted, mCreatedAt[index]);
+        removeAt(mCreatedAtSorted, sortedIndex, mCount);
+        removeAt(mIds, index, mCount);
+        removeAt(mCreatedAt, index, mCount);
+        removeAt(mWateredAt, index, mCount);
+        System.arraycopy(mTypes, index + 1, mTypes, index, mCount - index - 1);
+        mCount--;
+    }
+
+    /**
+     * Inserts the plant at its position in both orders. Must be called holding the lock.
+     */
+    private void insertPlant(long plantId, int type, long createdAt, long wateredAt) {
+        if (mCount == mIds.length) {
+            int capacity = mCount * 2;
+            mIds = Arrays.copyOf(mIds, capacity);
+            mTypes = Arrays.copyOf(mTypes, capacity);
+            mCreatedAt = Arrays.copyOf(mCreatedAt, capacity);
+            mWateredAt = Arrays.copyOf(mWateredAt, capacity);
+            mCreatedAtSorted = Arrays.copyOf(mCreatedAtSorted, capacity);
+        }
+        int sortedIndex = countBefore(mCreatedAtSorted, createdAt);
+        insertAt(mCreatedAtSorted, sortedIndex, mCount, createdAt);
+        int index = countBefore(mWateredAt, wateredAt);
+        insertAt(mIds, index, mCount, plantId);
+        insertAt(mCreatedAt, index, mCount, createdAt);
+        insertAt(mWateredAt, index, mCount, wateredAt);
+        System.arraycopy(mTypes, index, mTypes, index + 1, mCount - index);
+        mTypes[index] = type;
+        mCount++;
+    }
+
+    private static void removeAt(long[] array, int index, int count) {
+        System.arraycopy(array, index + 1, array, index, count - index - 1);
+    }
+
+    private static void insertAt(long[] array, int index, int count, long value) {
+        System.arraycopy(array, index, array, index + 1, count - index);
+        array[index] = value;
+    }
+}
@@ -0,0 +1,432 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.example.android.mygarden.PlantWateringService;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streams whole gardens in and out of the plants database, in fixed size chunks so that
+ * memory use does not depend on the garden size. Plants are transferred without their Ids,
+ * which are assigned on import.
+ * <p>
+ * The binary format is a header (magic number and version, 4 bytes each) followed by one
+ * 20 byte record per plant: type (int), creation time and last watered time (longs),
+ * big-endian. The CSV format is a header line followed by one
+ * "plantType,createdAt,lastWateredAt" line per plant.
+ * <p>
+ * The transfers run in the provider, through {@link PlantContract#METHOD_IMPORT_GARDEN} and
+ * {@link PlantContract#METHOD_EXPORT_GARDEN}, which only the app itself may call. Both do
+ * disk I/O and must not be called on the main thread.
+ */
+public class GardenTransfer {
+
+    public enum Format {BINARY, CSV}
+
+    /**
+     * Receives the number of plants transferred so far
+     */
+    public interface ProgressListener {
+        void onProgress(long plantCount);
+    }
+
+    /**
+     * Receives the plants read from a garden file
+     */
+    interface PlantSink {
+        void addPlant(int type, long createdAt, long wateredAt);
+    }
+
+    private static final String TAG = GardenTransfer.class.getSimpleName();
+
+    private static final int MAGIC = 0x4D594744; // "MYGD"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 4 + 8 + 8;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // Longest CSV line: two 20 char longs, an 11 char int, separators
+    private static final int MAX_CSV_LINE = 64;
+    private static final int PROGRESS_INTERVAL = 10000;
+
+    private static final String CSV_HEADER = PlantEntry.COLUMN_PLANT_TYPE + ","
+            + PlantEntry.COLUMN_CREATION_TIME + "," + PlantEntry.COLUMN_LAST_WATERED_TIME + "\n";
+
+    private static final String SQL_INSERT = "INSERT INTO " + PlantEntry.TABLE_NAME + " ("
+            + PlantEntry.COLUMN_PLANT_TYPE + ", " + PlantEntry.COLUMN_CREATION_TIME + ", "
+            + PlantEntry.COLUMN_LAST_WATERED_TIME + ") VALUES (?, ?, ?)";
+
+    private static final String[] EXPORT_PROJECTION = {
+            PlantEntry.COLUMN_PLANT_TYPE,
+            PlantEntry.COLUMN_CREATION_TIME,
+            PlantEntry.COLUMN_LAST_WATERED_TIME
+    };
+
+    // Logs the progress of the transfers run by the provider
+    private static final ProgressListener LOG_PROGRESS = new ProgressListener() {
+        @Override
+        public void onProgress(long plantCount) {
+            Log.i(TAG, plantCount + " plants transferred");
+        }
+    };
+
+    /**
+     * Adds all the plants of the file to the garden, in a single transaction, then saves
+     * the garden and updates the widgets
+     *
+     * @param context The context
+     * @param file    The file to read, which the provider's process must be able to read
+     * @param format  The format of the file
+     * @return The number of plants imported
+     * @throws IOException if the file cannot be read or is malformed, nothing is imported then
+     */
+    public static long importGarden(Context context, File file, Format format) throws IOException {
+        long plantCount = transfer(context, PlantContract.METHOD_IMPORT_GARDEN, file, format);
+        if (plantCount > 0) {
+            GardenSnapshotFile.update(context);
+            PlantWateringService.startActionUpdatePlantWidgets(context);
+        }
+        return plantCount;
+    }
+
+    /**
+     * Writes all the plants of the garden to the file, replacing its contents
+     *
+     * @param context The context
+     * @param file    The file to write, which the provider's process must be able to write
+     * @param format  The format to write
+     * @return The number of plants exported
+     * @throws IOException if the file cannot be written
+     */
+    public static long exportGarden(Context context, File file, Format format) throws IOException {
+        return transfer(context, PlantContract.METHOD_EXPORT_GARDEN, file, format);
+    }
+
+    private static long transfer(Context context, String method, File file, Format format)
+            throws IOException {
+        Bundle extras = new Bundle();
+        extras.putString(PlantContract.EXTRA_TRANSFER_FORMAT, format.name());
+        Bundle result;
+        try {
+            result = context.getContentResolver().call(PlantEntry.CONTENT_URI, method,
+                    file.getAbsolutePath(), extras);
+        } catch (IllegalArgumentException e) {
+            // How the provider reports I/O errors across processes
+            throw new IOException(e.getMessage(), e);
+        }
+        if (result == null) throw new IOException("Garden provider not available");
+        return result.getLong(PlantContract.EXTRA_PLANT_COUNT);
+    }
+
+    /**
+     * Runs an import requested through the provider
+     *
+     * @param db        The writable database
+     * @param path      The path of the file to read
+     * @param extras    The format of the file
+     * @param typeCount The number of plant types, imported types must be lower
+     * @return The number of plants imported
+     * @throws IllegalArgumentException if the file cannot be read or is malformed
+     */
+    static long importFile(SQLiteDatabase db, String path, Bundle extras, int typeCount) {
+        try {
+            FileInputStream in = new FileInputStream(path);
+            final SQLiteStatement insert = db.compileStatement(SQL_INSERT);
+            long plantCount;
+            db.beginTransaction();
+            try {
+                plantCount = readGarden(in.getChannel(), getFormat(extras), typeCount,
+                        new PlantSink() {
+                            @Override
+                            public void addPlant(int type, long createdAt, long wateredAt) {
+                                insertPlant(insert, type, createdAt, wateredAt);
+                            }
+                        }, LOG_PROGRESS);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                insert.close();
+                in.close();
+            }
+            return plantCount;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot import " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Runs an export requested through the provider
+     *
+     * @param db     The readable database
+     * @param path   The path of the file to write
+     * @param extras The format to write
+     * @return The number of plants exported
+     * @throws IllegalArgumentException if the file cannot be written
+     */
+    static long exportFile(SQLiteDatabase db, String path, Bundle extras) {
+        Format format = getFormat(extras);
+        try {
+            // The cursor window only holds a part of the rows at a time
+            Cursor cursor = db.query(PlantEntry.TABLE_NAME, EXPORT_PROJECTION,
+                    PlantEntry.COLUMN_DELETED + "=0", null, null, null, PlantEntry._ID);
+            FileOutputStream out = null;
+            try {
+                out = new FileOutputStream(path);
+                long plantCount = writeGarden(cursor, format, out.getChannel(), LOG_PROGRESS);
+                out.getFD().sync();
+                return plantCount;
+            } finally {
+                cursor.close();
+                if (out != null) out.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot export " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static Format getFormat(Bundle extras) {
+        String format = extras == null ? null : extras.getString(PlantContract.EXTRA_TRANSFER_FORMAT);
+        if (format == null) throw new IllegalArgumentException("Missing transfer format");
+        return Format.valueOf(format);
+    }
+
+    /**
+     * Reads all the plants of a garden file
+     *
+     * @param channel   The file contents
+     * @param format    The format of the file
+     * @param typeCount The number of plant types, types must be lower
+     * @param sink      Receives the plants
+     * @param listener  Notified of the progress, may be null
+     * @return The number of plants read
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    static long readGarden(ReadableByteChannel channel, Format format, int typeCount,
+                           PlantSink sink, ProgressListener listener) throws IOException {
+        long plantCount = format == Format.BINARY
+                ? readBinary(channel, typeCount, sink, listener)
+                : readCsv(channel, typeCount, sink, listener);
+        if (listener != null) listener.onProgress(plantCount);
+        return plantCount;
+    }
+
+    /**
+     * Writes the plants of the cursor, positioned before its first row
+     *
+     * @param cursor   The plant type, creation time and last watered time of the plants
+     * @param format   The format to write
+     * @param channel  The file to write to
+     * @param listener Notified of the progress, may be null
+     * @return The number of plants written
+     * @throws IOException if the file cannot be written
+     */
+    static long writeGarden(Cursor cursor, Format format, WritableByteChannel channel,
+                            ProgressListener listener) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        long plantCount = 0;
+        if (format == Format.BINARY) {
+            buffer.putInt(MAGIC).putInt(VERSION);
+        } else {
+            for (int i = 0; i < CSV_HEADER.length(); i++) buffer.put((byte) CSV_HEADER.charAt(i));
+        }
+        while (cursor.moveToNext()) {
+            if (buffer.remaining() < MAX_CSV_LINE) flush(buffer, channel);
+            int type = cursor.getInt(0);
+            long createdAt = cursor.getLong(1);
+            long wateredAt = cursor.getLong(2);
+            if (format == Format.BINARY) {
+                buffer.putInt(type).putLong(createdAt).putLong(wateredAt);
+            } else {
+                putDecimal(buffer, type);
+                buffer.put((byte) ',');
+                putDecimal(buffer, createdAt);
+                buffer.put((byte) ',');
+                putDecimal(buffer, wateredAt);
+                buffer.put((byte) '\n');
+            }
+            if (++plantCount % PROGRESS_INTERVAL == 0 && listener != null) {
+                listener.onProgress(plantCount);
+            }
+        }
+        flush(buffer, channel);
+        if (listener != null) listener.onProgress(plantCount);
+        return plantCount;
+    }
+
+    private static long readBinary(ReadableByteChannel channel, int typeCount, PlantSink sink,
+                                   ProgressListener listener) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        long plantCount = 0;
+        boolean headerRead = false;
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            if (!headerRead && buffer.remaining() >= HEADER_SIZE) {
+                if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                    throw new IOException("Not a version " + VERSION + " garden file");
+                }
+                headerRead = true;
+            }
+            while (headerRead && buffer.remaining() >= RECORD_SIZE) {
+                int type = buffer.getInt();
+                if (type < 0 || type >= typeCount) {
+                    throw new IOException("Unknown plant type " + type + " in record " + (plantCount + 1));
+                }
+                sink.addPlant(type, buffer.getLong(), buffer.getLong());
+                if (++plantCount % PROGRESS_INTERVAL == 0 && listener != null) {
+                    listener.onProgress(plantCount);
+                }
+            }
+            buffer.compact();
+        }
+        if (!headerRead || buffer.position() > 0) {
+            throw new IOException("Truncated garden file");
+        }
+        return plantCount;
+    }
+
+    private static long readCsv(ReadableByteChannel channel, int typeCount, PlantSink sink,
+                                ProgressListener listener) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        long[] fields = new long[3];
+        int field = 0;
+        // Accumulated negatively, like Long.parseLong, so that Long.MIN_VALUE fits
+        long value = 0;
+        boolean negative = false;
+        boolean hasDigits = false;
+        boolean inHeader = true;
+        long line = 1;
+        long plantCount = 0;
+        boolean endOfFile = false;
+        while (!endOfFile) {
+            buffer.clear();
+            endOfFile = channel.read(buffer) < 0;
+            buffer.flip();
+            // A missing final line break ends the last line at the end of the file
+            int end = endOfFile ? buffer.limit() + 1 : buffer.limit();
+            for (int i = buffer.position(); i < end; i++) {
+                byte b = i < buffer.limit() ? buffer.get(i) : (byte) '\n';
+                if (inHeader) {
+                    if (b == '\n') {
+                        inHeader = false;
+                        line++;
+                    }
+                    continue;
+                }
+                if (b >= '0' && b <= '9') {
+                    int digit = b - '0';
+                    long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+                    if (value < limit / 10 || value * 10 < limit + digit) {
+                        throw new IOException("Value out of range on line " + line);
+                    }
+                    value = value * 10 - digit;
+                    hasDigits = true;
+                } else if (b == '-' && !hasDigits && !negative) {
+                    negative = true;
+                } else if (b == ',' || b == '\n') {
+                    if (!hasDigits) {
+                        // Blank lines are allowed, empty fields are not
+                        if (b == '\n' && field == 0 && !negative) {
+                            line++;
+                            continue;
+                        }
+                        throw new IOException("Missing value on line " + line);
+                    }
+                    if (field == fields.length) {
+                        throw new IOException("Too many values on line " + line);
+                    }
+                    fields[field++] = negative ? value : -value;
+                    value = 0;
+                    negative = false;
+                    hasDigits = false;
+                    if (b == '\n') {
+                        if (field != fields.length) {
+                            throw new IOException("Missing value on line " + line);
+                        }
+                        if (fields[0] < 0 || fields[0] >= typeCount) {
+                            throw new IOException("Unknown plant type " + fields[0] + " on line " + line);
+                        }
+                        sink.addPlant((int) fields[0], fields[1], fields[2]);
+                        field = 0;
+                        line++;
+                        if (++plantCount % PROGRESS_INTERVAL == 0 && listener != null) {
+                            listener.onProgress(plantCount);
+                        }
+                    }
+                } else if (b != '\r' && b != ' ') {
+                    throw new IOException("Unexpected character on line " + line);
+                }
+            }
+        }
+        return plantCount;
+    }
+
+    private static void insertPlant(SQLiteStatement insert, int type, long createdAt, long wateredAt) {
+        insert.bindLong(1, type);
+        insert.bindLong(2, createdAt);
+        insert.bindLong(3, wateredAt);
+        if (insert.executeInsert() <= 0) {
+            throw new SQLException("Failed to insert row into " + PlantEntry.TABLE_NAME);
+        }
+    }
+
+    /**
+     * Writes the value as ASCII decimal digits
+     */
+    private static void putDecimal(ByteBuffer buffer, long value) {
+        if (value == Long.MIN_VALUE) {
+            String digits = String.valueOf(value);
+            for (int i = 0; i < digits.length(); i++) buffer.put((byte) digits.charAt(i));
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int start = buffer.position();
+        do {
+            buffer.put((byte) ('0' + value % 10));
+            value /= 10;
+        } while (value > 0);
+        // Digits were written least significant first
+        for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            byte digit = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, digit);
+        }
+    }
+
+    private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
@@ -17,17 +17,28 @@ package com.example.android.mygarden.provider;
 */
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.Process;
 import android.support.annotation.NonNull;
 
+import com.example.android.mygarden.utils.PerfMetrics;
+import com.example.android.mygarden.utils.PlantUtils;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Arrays;
 
 import static com.example.android.mygarden.provider.PlantContract.PlantEntry;
 
@@ -39,11 +50,84 @@ public class PlantContentProvider extends ContentProvider {
     // and related ints (101, 102, ..) for items in that directory.
     public static final int PLANTS = 100;
     public static final int PLANT_WITH_ID = 101;
+    public static final int PLANTS_WATER = 102;
+    public static final int PLANTS_THIRSTIEST = 103;
+    public static final int PLANTS_NEXT_TRANSITION = 104;
+    public static final int PLANTS_SUMMARY = 105;
+    public static final int PLANT_WATER_WITH_ID = 106;
 
     // Declare a static variable for the Uri matcher that you construct
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private static final String TAG = PlantContentProvider.class.getName();
 
+    // Default columns returned for the thirstiest plant
+    private static final String[] THIRSTIEST_PROJECTION = {
+            PlantEntry._ID,
+            PlantEntry.COLUMN_PLANT_TYPE,
+            PlantEntry.COLUMN_CREATION_TIME,
+            PlantEntry.COLUMN_LAST_WATERED_TIME
+    };
+
+    // Selection of the plants that have not been cut
+    private static final String NOT_DELETED = PlantEntry.COLUMN_DELETED + "=0";
+
+    // Ages at which a plant's image or water button change, relative to the last watered time
+    private static final long[] WATER_TRANSITION_AGES = {
+            PlantUtils.MIN_AGE_BETWEEN_WATER,
+            PlantUtils.DANGER_AGE_WITHOUT_WATER,
+            PlantUtils.MAX_AGE_WITHOUT_WATER
+    };
+
+    // Ages at which a plant's image changes, relative to the creation time
+    private static final long[] GROWTH_TRANSITION_AGES = {
+            PlantUtils.TINY_AGE,
+            PlantUtils.JUVENILE_AGE,
+            PlantUtils.FULLY_GROWN_AGE
+    };
+
+    // Earliest upcoming transition: for each threshold, the oldest plant that has not crossed
+    // it yet is found with an index seek, so the cost does not depend on the garden size
+    private static final String SQL_NEXT_TRANSITION = buildNextTransitionQuery();
+
+    // Plant counts by type, status and size. The arguments are the timestamps below which
+    // a plant is dead, in danger, fully grown, juvenile and tiny, see buildSummaryArgs
+    private static final String SQL_SUMMARY = "SELECT "
+            + PlantEntry.COLUMN_PLANT_TYPE + ", "
+            + "CASE WHEN " + PlantEntry.COLUMN_LAST_WATERED_TIME + "<?1 THEN " + PlantUtils.PlantStatus.DEAD.ordinal()
+            + " WHEN " + PlantEntry.COLUMN_LAST_WATERED_TIME + "<?2 THEN " + PlantUtils.PlantStatus.DYING.ordinal()
+            + " ELSE " + PlantUtils.PlantStatus.ALIVE.ordinal() + " END AS " + PlantEntry.COLUMN_STATUS + ", "
+            + "CASE WHEN " + PlantEntry.COLUMN_CREATION_TIME + "<?3 THEN " + PlantUtils.PlantSize.FULLY_GROWN.ordinal()
+            + " WHEN " + PlantEntry.COLUMN_CREATION_TIME + "<?4 THEN " + PlantUtils.PlantSize.JUVENILE.ordinal()
+            + " WHEN " + PlantEntry.COLUMN_CREATION_TIME + "<?5 THEN " + PlantUtils.PlantSize.TINY.ordinal()
+            + " ELSE " + PlantEntry.SIZE_EMPTY_POT + " END AS " + PlantEntry.COLUMN_SIZE + ", "
+            + "COUNT(*) AS " + PlantEntry.COLUMN_PLANT_COUNT
+            + " FROM " + PlantEntry.TABLE_NAME
+            + " WHERE " + NOT_DELETED
+            + " GROUP BY " + PlantEntry.COLUMN_PLANT_TYPE + ", "
+            + PlantEntry.COLUMN_STATUS + ", " + PlantEntry.COLUMN_SIZE;
+
+    // Statements of the frequent writes, bound with primitives instead of going through
+    // ContentValues and rebuilding the SQL on every call
+    private static final String SQL_INSERT_PLANT = "INSERT INTO " + PlantEntry.TABLE_NAME + " ("
+            + PlantEntry.COLUMN_PLANT_TYPE + ", " + PlantEntry.COLUMN_CREATION_TIME + ", "
+            + PlantEntry.COLUMN_LAST_WATERED_TIME + ") VALUES (?, ?, ?)";
+    // Arguments: watering time, plant Id, time below which the plant is dead
+    private static final String SQL_WATER_PLANT = "UPDATE " + PlantEntry.TABLE_NAME
+            + " SET " + PlantEntry.COLUMN_LAST_WATERED_TIME + "=?"
+            + " WHERE " + PlantEntry._ID + "=? AND " + PlantEntry.COLUMN_LAST_WATERED_TIME + ">?"
+            + " AND " + NOT_DELETED;
+    // Arguments: watering time, time below which a plant is dead, time after which it
+    // was watered too recently
+    private static final String SQL_WATER_PLANTS = "UPDATE " + PlantEntry.TABLE_NAME
+            + " SET " + PlantEntry.COLUMN_LAST_WATERED_TIME + "=?"
+            + " WHERE " + PlantEntry.COLUMN_LAST_WATERED_TIME + ">? AND "
+            + PlantEntry.COLUMN_LAST_WATERED_TIME + "<? AND " + NOT_DELETED;
+
+    // Cuts a plant by marking it deleted, argument: plant Id
+    private static final String SQL_DELETE_PLANT = "UPDATE " + PlantEntry.TABLE_NAME
+            + " SET " + PlantEntry.COLUMN_DELETED + "=1"
+            + " WHERE " + PlantEntry._ID + "=? AND " + NOT_DELETED;
+
     // Define a static buildUriMatcher method that associates URI's with their int match
     public static UriMatcher buildUriMatcher() {
         // Initialize a UriMatcher
@@ -51,19 +135,118 @@ public class PlantContentProvider extends ContentProvider {
         // Add URI matches
         uriMatcher.addURI(PlantContract.AUTHORITY, PlantContract.PATH_PLANTS, PLANTS);
         uriMatcher.addURI(PlantContract.AUTHORITY, PlantContract.PATH_PLANTS + "/#", PLANT_WITH_ID);
+        uriMatcher.addURI(PlantContract.AUTHORITY,
+                PlantContract.PATH_PLANTS + "/" + PlantContract.PATH_WATER, PLANTS_WATER);
+        uriMatcher.addURI(PlantContract.AUTHORITY,
+                PlantContract.PATH_PLANTS + "/" + PlantContract.PATH_THIRSTIEST, PLANTS_THIRSTIEST);
+        uriMatcher.addURI(PlantContract.AUTHORITY,
+                PlantContract.PATH_PLANTS + "/" + PlantContract.PATH_NEXT_TRANSITION, PLANTS_NEXT_TRANSITION);
+        uriMatcher.addURI(PlantContract.AUTHORITY,
+                PlantContract.PATH_PLANTS + "/" + PlantContract.PATH_SUMMARY, PLANTS_SUMMARY);
+        uriMatcher.addURI(PlantContract.AUTHORITY,
+                PlantContract.PATH_PLANTS + "/" + PlantContract.PATH_WATER + "/#", PLANT_WATER_WITH_ID);
         return uriMatcher;
     }
 
     // Member variable for a PlantDbHelper that's initialized in the onCreate() method
     private PlantDbHelper mPlantDbHelper;
 
+    // Tracks whether the calling thread is applying a batch (non-null) and whether that batch
+    // changed any rows (TRUE), so that a batch results in a single change notification
+    private final ThreadLocal<Boolean> mBatchChanged = new ThreadLocal<>();
+
+    // Indexes of the compiled write statements
+    private static final int INSERT_PLANT = 0;
+    private static final int WATER_PLANT = 1;
+    private static final int WATER_PLANTS = 2;
+    private static final int DELETE_PLANT = 3;
+    private static final String[] WRITE_STATEMENTS_SQL = {
+            SQL_INSERT_PLANT, SQL_WATER_PLANT, SQL_WATER_PLANTS, SQL_DELETE_PLANT
+    };
+
+    // Compiled write statements shared by all binder threads, compiled on first use and closed
+    // on shutdown. Guarded by the array itself, which is only locked inside a transaction so
+    // that the lock is never held while waiting for a batch transaction on another thread
+    private final SQLiteStatement[] mWriteStatements = new SQLiteStatement[WRITE_STATEMENTS_SQL.length];
+
     @Override
     public boolean onCreate() {
         Context context = getContext();
-        mPlantDbHelper = new PlantDbHelper(context);
+        mPlantDbHelper = PlantDbHelper.getInstance(context);
         return true;
     }
 
+    /***
+     * Binds the arguments to a compiled write statement and executes it, in a transaction
+     * nested in the current one if any
+     *
+     * @param db             The writable database
+     * @param statementIndex The statement, INSERT_PLANT, WATER_PLANT, WATER_PLANTS or DELETE_PLANT
+     * @param args           The arguments of the statement
+     * @return the new row Id for INSERT_PLANT, the number of rows changed for the others
+     */
+    private long executeWrite(SQLiteDatabase db, int statementIndex, long... args) {
+        long result;
+        db.beginTransactionNonExclusive();
+        try {
+            synchronized (mWriteStatements) {
+                SQLiteStatement statement = mWriteStatements[statementIndex];
+                if (statement == null) {
+                    statement = db.compileStatement(WRITE_STATEMENTS_SQL[statementIndex]);
+                    mWriteStatements[statementIndex] = statement;
+                }
+                for (int i = 0; i < args.length; i++) {
+                    statement.bindLong(i + 1, args[i]);
+                }
+                result = statementIndex == INSERT_PLANT
+                        ? statement.executeInsert() : statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return result;
+    }
+
+    /***
+     * Closes the compiled write statements, the database itself is shared and stays open
+     */
+    @Override
+    public void shutdown() {
+        synchronized (mWriteStatements) {
+            for (int i = 0; i < mWriteStatements.length; i++) {
+                if (mWriteStatements[i] != null) {
+                    mWriteStatements[i].close();
+                    mWriteStatements[i] = null;
+                }
+            }
+        }
+        super.shutdown();
+    }
+
+    /***
+     * Inserts a plant, through the compiled statement when the values hold exactly the
+     * plant columns
+     *
+     * @param db     The writable database
+     * @param values The plant values
+     * @return the new row Id, or -1 on failure
+     */
+    private long insertPlant(SQLiteDatabase db, ContentValues values) {
+        if (values == null || values.size() != 3) {
+            return db.insert(PlantEntry.TABLE_NAME, null, values);
+        }
+        Object plantType = values.get(PlantEntry.COLUMN_PLANT_TYPE);
+        Object createdAt = values.get(PlantEntry.COLUMN_CREATION_TIME);
+        Object wateredAt = values.get(PlantEntry.COLUMN_LAST_WATERED_TIME);
+        if (!(plantType instanceof Number && createdAt instanceof Number
+                && wateredAt instanceof Number)) {
+            return db.insert(PlantEntry.TABLE_NAME, null, values);
+        }
+        return executeWrite(db, INSERT_PLANT, ((Number) plantType).longValue(),
+                ((Number) createdAt).longValue(), ((Number) wateredAt).longValue());
+    }
+
     /***
      * Handles requests to insert a single new row of data
      *
@@ -71,8 +254,7 @@ public class PlantContentProvider extends ContentProvider {
      * @param values
      * @return
      */
-    @Override
-    public Uri insert(@NonNull Uri uri, ContentValues values) {
+    private Uri performInsert(Uri uri, ContentValues values) {
         final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
 
         // Write URI matching code to identify the match for the plants directory
@@ -81,7 +263,7 @@ public class PlantContentProvider extends ContentProvider {
         switch (match) {
             case PLANTS:
                 // Insert new values into the database
-                long id = db.insert(PlantEntry.TABLE_NAME, null, values);
+                long id = insertPlant(db, values);
                 if (id > 0) {
                     returnUri = ContentUris.withAppendedId(PlantContract.PlantEntry.CONTENT_URI, id);
                 } else {
@@ -93,8 +275,9 @@ public class PlantContentProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 
-        // Notify the resolver if the uri has been changed, and return the newly inserted URI
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Notify the resolver on the new plant's URI, which also notifies observers of the
+        // plants directory, and return the newly inserted URI
+        notifyChange(returnUri);
 
         // Return constructed uri (this points to the newly inserted row of data)
         return returnUri;
@@ -110,9 +293,8 @@ public class PlantContentProvider extends ContentProvider {
      * @param sortOrder
      * @return
      */
-    @Override
-    public Cursor query(@NonNull Uri uri, String[] projection, String selection,
-                        String[] selectionArgs, String sortOrder) {
+    private Cursor performQuery(Uri uri, String[] projection, String selection,
+                                String[] selectionArgs, String sortOrder) {
 
         // Get access to underlying database (read-only for query)
         final SQLiteDatabase db = mPlantDbHelper.getReadableDatabase();
@@ -120,50 +302,166 @@ public class PlantContentProvider extends ContentProvider {
         // Write URI match code and set a variable to return a Cursor
         int match = sUriMatcher.match(uri);
         Cursor retCursor;
+        // URI that observers of the returned Cursor are notified on
+        Uri notificationUri = uri;
 
         switch (match) {
             // Query for the plants directory
             case PLANTS:
                 retCursor = db.query(PlantEntry.TABLE_NAME,
                         projection,
-                        selection,
+                        notDeleted(selection),
                         selectionArgs,
                         null,
                         null,
-                        sortOrder);
+                        sortOrder,
+                        getLimit(uri));
                 break;
             case PLANT_WITH_ID:
                 String id = uri.getPathSegments().get(1);
                 retCursor = db.query(PlantEntry.TABLE_NAME,
                         projection,
-                        "_id=?",
+                        "_id=? AND " + NOT_DELETED,
                         new String[]{id},
                         null,
                         null,
                         sortOrder);
                 break;
+            case PLANTS_THIRSTIEST:
+                // Only the least recently watered plant is needed, which the
+                // lastWateredAt index returns without scanning or sorting the table
+                retCursor = db.query(PlantEntry.TABLE_NAME,
+                        projection != null ? projection : THIRSTIEST_PROJECTION,
+                        notDeleted(selection),
+                        selectionArgs,
+                        null,
+                        null,
+                        PlantEntry.COLUMN_LAST_WATERED_TIME,
+                        "1");
+                // Any change to the garden may change the thirstiest plant
+                notificationUri = PlantEntry.CONTENT_URI;
+                break;
+            case PLANTS_NEXT_TRANSITION:
+                retCursor = db.rawQuery(SQL_NEXT_TRANSITION,
+                        buildNextTransitionArgs(System.currentTimeMillis()));
+                notificationUri = PlantEntry.CONTENT_URI;
+                break;
+            case PLANTS_SUMMARY:
+                // Classified in SQL with the same thresholds as PlantUtils.getPlantImageRes
+                retCursor = db.rawQuery(SQL_SUMMARY, buildSummaryArgs(System.currentTimeMillis()));
+                notificationUri = PlantEntry.CONTENT_URI;
+                break;
             // Default exception
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 
         // Set a notification URI on the Cursor and return that Cursor
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        retCursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
 
         // Return the desired Cursor
         return retCursor;
     }
 
     /***
-     * Deletes a single row of data
+     * Restricts the selection to the plants that have not been cut
+     *
+     * @param selection The selection, may be null
+     * @return the restricted selection
+     */
+    private static String notDeleted(String selection) {
+        return selection == null ? NOT_DELETED : NOT_DELETED + " AND (" + selection + ")";
+    }
+
+    /***
+     * Returns the LIMIT clause requested by the limit and offset query parameters of the URI
+     *
+     * @param uri The query URI
+     * @return the LIMIT clause, or null when the URI does not limit the rows
+     */
+    private static String getLimit(Uri uri) {
+        String limit = uri.getQueryParameter(PlantContract.QUERY_PARAMETER_LIMIT);
+        if (limit == null) return null;
+        String offset = uri.getQueryParameter(PlantContract.QUERY_PARAMETER_OFFSET);
+        try {
+            // Parsed so that only numbers end up in the SQL
+            int limitRows = Integer.parseInt(limit);
+            int offsetRows = offset == null ? 0 : Integer.parseInt(offset);
+            return offsetRows > 0 ? offsetRows + "," + limitRows : String.valueOf(limitRows);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit or offset in uri: " + uri, e);
+        }
+    }
+
+    /***
+     * Builds the query returning the next time at which any plant changes status or size.
+     * A plant crosses an age threshold 1ms after its timestamp plus the threshold.
+     *
+     * @return the SQL query, taking one argument per threshold from buildNextTransitionArgs
+     */
+    private static String buildNextTransitionQuery() {
+        StringBuilder sql = new StringBuilder("SELECT MIN(t) AS ")
+                .append(PlantEntry.COLUMN_NEXT_TRANSITION_TIME).append(" FROM (");
+        String separator = "";
+        for (long age : WATER_TRANSITION_AGES) {
+            appendNextTransition(sql.append(separator), PlantEntry.COLUMN_LAST_WATERED_TIME, age);
+            separator = " UNION ALL ";
+        }
+        for (long age : GROWTH_TRANSITION_AGES) {
+            appendNextTransition(sql.append(separator), PlantEntry.COLUMN_CREATION_TIME, age);
+        }
+        return sql.append(")").toString();
+    }
+
+    private static void appendNextTransition(StringBuilder sql, String column, long age) {
+        sql.append("SELECT (SELECT ").append(column)
+                .append(" FROM ").append(PlantEntry.TABLE_NAME)
+                .append(" WHERE ").append(column).append(">=? AND ").append(NOT_DELETED)
+                .append(" ORDER BY ").append(column).append(" LIMIT 1) + ")
+                .append(age + 1).append(" AS t");
+    }
+
+    /***
+     * Returns the arguments of the next transition query: the oldest timestamp that has not
+     * crossed each threshold yet
+     *
+     * @param timeNow The current time
+     * @return the query arguments
+     */
+    private static String[] buildNextTransitionArgs(long timeNow) {
+        String[] args = new String[WATER_TRANSITION_AGES.length + GROWTH_TRANSITION_AGES.length];
+        int i = 0;
+        for (long age : WATER_TRANSITION_AGES) args[i++] = String.valueOf(timeNow - age);
+        for (long age : GROWTH_TRANSITION_AGES) args[i++] = String.valueOf(timeNow - age);
+        return args;
+    }
+
+    /***
+     * Returns the arguments of the summary query for the given time
+     *
+     * @param timeNow The current time
+     * @return the query arguments
+     */
+    private static String[] buildSummaryArgs(long timeNow) {
+        return new String[]{
+                String.valueOf(timeNow - PlantUtils.MAX_AGE_WITHOUT_WATER),
+                String.valueOf(timeNow - PlantUtils.DANGER_AGE_WITHOUT_WATER),
+                String.valueOf(timeNow - PlantUtils.FULLY_GROWN_AGE),
+                String.valueOf(timeNow - PlantUtils.JUVENILE_AGE),
+                String.valueOf(timeNow - PlantUtils.TINY_AGE)
+        };
+    }
+
+    /***
+     * Deletes a single row of data. The plant is only marked deleted, which hides it from
+     * every query, and the row is removed later by GardenCompactor
      *
      * @param uri
      * @param selection
      * @param selectionArgs
      * @return number of rows affected
      */
-    @Override
-    public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
+    private int performDelete(Uri uri, String selection, String[] selectionArgs) {
         // Get access to the database and write URI matching code to recognize a single item
         final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
         int match = sUriMatcher.match(uri);
@@ -172,10 +470,11 @@ public class PlantContentProvider extends ContentProvider {
         switch (match) {
             // Handle the single item case, recognized by the ID included in the URI path
             case PLANT_WITH_ID:
-                // Get the plant ID from the URI path
-                String id = uri.getPathSegments().get(1);
-                // Use selections/selectionArgs to filter for this ID
-                plantsDeleted = db.delete(PlantEntry.TABLE_NAME, "_id=?", new String[]{id});
+                if (selection != null) {
+                    throw new UnsupportedOperationException("Selection not supported for uri: " + uri);
+                }
+                // Mark the plant with the ID from the URI path as deleted
+                plantsDeleted = (int) executeWrite(db, DELETE_PLANT, ContentUris.parseId(uri));
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -183,7 +482,7 @@ public class PlantContentProvider extends ContentProvider {
         // Notify the resolver of a change and return the number of items deleted
         if (plantsDeleted != 0) {
             // A plant (or more) was deleted, set notification
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         // Return the number of plant deleted
         return plantsDeleted;
@@ -197,9 +496,8 @@ public class PlantContentProvider extends ContentProvider {
      * @param selectionArgs
      * @return number of rows affected
      */
-    @Override
-    public int update(@NonNull Uri uri, ContentValues values, String selection,
-                      String[] selectionArgs) {
+    private int performUpdate(Uri uri, ContentValues values, String selection,
+                              String[] selectionArgs) {
         // Get access to underlying database
         final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
         int match = sUriMatcher.match(uri);
@@ -208,23 +506,37 @@ public class PlantContentProvider extends ContentProvider {
 
         switch (match) {
             case PLANTS:
-                plantsUpdated = db.update(PlantEntry.TABLE_NAME, values, selection, selectionArgs);
+                plantsUpdated = db.update(PlantEntry.TABLE_NAME, values, notDeleted(selection), selectionArgs);
                 break;
             case PLANT_WITH_ID:
-                if (selection == null) selection = PlantEntry._ID + "=?";
-                else selection += " AND " + PlantEntry._ID + "=?";
+                selection = notDeleted(selection) + " AND " + PlantEntry._ID + "=?";
                 // Get the place ID from the URI path
                 String id = uri.getPathSegments().get(1);
                 // Append any existing selection options to the ID filter
                 if (selectionArgs == null) selectionArgs = new String[]{id};
                 else {
-                    ArrayList<String> selectionArgsList = new ArrayList<String>();
-                    selectionArgsList.addAll(Arrays.asList(selectionArgs));
-                    selectionArgsList.add(id);
-                    selectionArgs = selectionArgsList.toArray(new String[selectionArgsList.size()]);
+                    String[] idSelectionArgs = new String[selectionArgs.length + 1];
+                    System.arraycopy(selectionArgs, 0, idSelectionArgs, 0, selectionArgs.length);
+                    idSelectionArgs[selectionArgs.length] = id;
+                    selectionArgs = idSelectionArgs;
                 }
                 plantsUpdated = db.update(PlantEntry.TABLE_NAME, values, selection, selectionArgs);
                 break;
+            case PLANTS_WATER:
+                plantsUpdated = waterPlants(db, values, selection, selectionArgs);
+                // Any plant may have been watered, notify the whole garden so observers of
+                // a single plant's URI hear about it too
+                uri = PlantEntry.CONTENT_URI;
+                break;
+            case PLANT_WATER_WITH_ID:
+                if (selection != null) {
+                    throw new UnsupportedOperationException("Selection not supported for uri: " + uri);
+                }
+                long plantId = ContentUris.parseId(uri);
+                plantsUpdated = waterPlant(db, plantId, values);
+                // Observers know the plant by its own URI
+                uri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId);
+                break;
             // Default exception
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -233,13 +545,262 @@ public class PlantContentProvider extends ContentProvider {
         // Notify the resolver of a change and return the number of items updated
         if (plantsUpdated != 0) {
             // A place (or more) was updated, set notification
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         // Return the number of places deleted
         return plantsUpdated;
     }
 
 
+    /***
+     * Returns the watering time held by the values, or the current time
+     *
+     * @param values Optionally holds the watering time
+     * @return the watering time
+     */
+    private static long getWateringTime(ContentValues values) {
+        Long wateredAt = values == null ? null
+                : values.getAsLong(PlantEntry.COLUMN_LAST_WATERED_TIME);
+        return wateredAt != null ? wateredAt : System.currentTimeMillis();
+    }
+
+    /***
+     * Waters a single plant if it is still alive
+     *
+     * @param db      The writable database
+     * @param plantId The plant Id
+     * @param values  Optionally holds the watering time, defaults to now
+     * @return number of plants watered
+     */
+    private int waterPlant(SQLiteDatabase db, long plantId, ContentValues values) {
+        long timeNow = getWateringTime(values);
+        return (int) executeWrite(db, WATER_PLANT, timeNow, plantId,
+                timeNow - PlantUtils.MAX_AGE_WITHOUT_WATER);
+    }
+
+    /***
+     * Waters every plant that is still alive and has not been watered recently, in a single
+     * UPDATE statement
+     *
+     * @param db            The writable database
+     * @param values        Optionally holds the watering time, defaults to now
+     * @param selection     Optional selection to further narrow the plants to water
+     * @param selectionArgs Arguments for the optional selection
+     * @return number of plants watered
+     */
+    private int waterPlants(SQLiteDatabase db, ContentValues values, String selection,
+                            String[] selectionArgs) {
+        long timeNow = getWateringTime(values);
+        if (selection == null) {
+            return (int) executeWrite(db, WATER_PLANTS, timeNow,
+                    timeNow - PlantUtils.MAX_AGE_WITHOUT_WATER,
+                    timeNow - PlantUtils.MIN_AGE_BETWEEN_WATER);
+        }
+        ContentValues waterValues = new ContentValues(1);
+        waterValues.put(PlantEntry.COLUMN_LAST_WATERED_TIME, timeNow);
+        // Alive plants that can be watered again
+        String waterSelection = PlantEntry.COLUMN_LAST_WATERED_TIME + ">? AND "
+                + PlantEntry.COLUMN_LAST_WATERED_TIME + "<? AND " + NOT_DELETED;
+        waterSelection += " AND (" + selection + ")";
+        int extraArgs = selectionArgs == null ? 0 : selectionArgs.length;
+        String[] waterSelectionArgs = new String[2 + extraArgs];
+        if (extraArgs > 0) {
+            System.arraycopy(selectionArgs, 0, waterSelectionArgs, 2, extraArgs);
+        }
+        waterSelectionArgs[0] = String.valueOf(timeNow - PlantUtils.MAX_AGE_WITHOUT_WATER);
+        waterSelectionArgs[1] = String.valueOf(timeNow - PlantUtils.MIN_AGE_BETWEEN_WATER);
+        return db.update(PlantEntry.TABLE_NAME, waterValues, waterSelection, waterSelectionArgs);
+    }
+
+    /***
+     * Inserts all the given rows in a single transaction
+     *
+     * @param uri
+     * @param values
+     * @return number of rows inserted
+     */
+    private int performBulkInsert(Uri uri, ContentValues[] values) {
+        final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
+        int match = sUriMatcher.match(uri);
+        if (match != PLANTS) {
+            throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+        int plantsInserted = 0;
+        db.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                if (insertPlant(db, value) <= 0) {
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                }
+                plantsInserted++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        // Notify the resolver once for the whole batch
+        if (plantsInserted != 0) {
+            notifyChange(uri);
+        }
+        return plantsInserted;
+    }
+
+    /***
+     * Applies all the operations in a single transaction, sending one change notification
+     * for the whole batch
+     *
+     * @param operations
+     * @return the results of the applied operations
+     * @throws OperationApplicationException
+     */
+    private ContentProviderResult[] performApplyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
+        ContentProviderResult[] results;
+        boolean changed;
+        mBatchChanged.set(Boolean.FALSE);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            changed = Boolean.TRUE.equals(mBatchChanged.get());
+            mBatchChanged.remove();
+        }
+        if (changed) {
+            notifyChange(PlantEntry.CONTENT_URI);
+        }
+        return results;
+    }
+
+    /***
+     * Notifies the resolver of a change, or defers it until the end of the batch being applied
+     * on this thread
+     *
+     * @param uri The changed uri
+     */
+    private void notifyChange(Uri uri) {
+        if (mBatchChanged.get() != null) {
+            mBatchChanged.set(Boolean.TRUE);
+            return;
+        }
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    // Each operation is timed as a trace section, see PerfMetrics
+
+    @Override
+    public Uri insert(@NonNull Uri uri, ContentValues values) {
+        long start = PerfMetrics.begin(PerfMetrics.PROVIDER_INSERT);
+        try {
+            return performInsert(uri, values);
+        } finally {
+            PerfMetrics.end(PerfMetrics.PROVIDER_INSERT, start);
+        }
+    }
+
+    @Override
+    public Cursor query(@NonNull Uri uri, String[] projection, String selection,
+                        String[] selectionArgs, String sortOrder) {
+        long start = PerfMetrics.begin(PerfMetrics.PROVIDER_QUERY);
+        try {
+            return performQuery(uri, projection, selection, selectionArgs, sortOrder);
+        } finally {
+            PerfMetrics.end(PerfMetrics.PROVIDER_QUERY, start);
+        }
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
+        long start = PerfMetrics.begin(PerfMetrics.PROVIDER_DELETE);
+        try {
+            return performDelete(uri, selection, selectionArgs);
+        } finally {
+            PerfMetrics.end(PerfMetrics.PROVIDER_DELETE, start);
+        }
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, ContentValues values, String selection,
+                      String[] selectionArgs) {
+        long start = PerfMetrics.begin(PerfMetrics.PROVIDER_UPDATE);
+        try {
+            return performUpdate(uri, values, selection, selectionArgs);
+        } finally {
+            PerfMetrics.end(PerfMetrics.PROVIDER_UPDATE, start);
+        }
+    }
+
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        long start = PerfMetrics.begin(PerfMetrics.PROVIDER_BULK_INSERT);
+        try {
+            return performBulkInsert(uri, values);
+        } finally {
+            PerfMetrics.end(PerfMetrics.PROVIDER_BULK_INSERT, start);
+        }
+    }
+
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long start = PerfMetrics.begin(PerfMetrics.PROVIDER_APPLY_BATCH);
+        try {
+            return performApplyBatch(operations);
+        } finally {
+            PerfMetrics.end(PerfMetrics.PROVIDER_APPLY_BATCH, start);
+        }
+    }
+
+    /***
+     * Runs the provider methods, see PlantContract.METHOD_COMPACT,
+     * PlantContract.METHOD_IMPORT_GARDEN and PlantContract.METHOD_EXPORT_GARDEN
+     *
+     * @param method The method name
+     * @param arg    The file path of the garden transfers, unused otherwise
+     * @param extras The format of the garden transfers, unused otherwise
+     * @return The number of plants transferred, null for the other methods
+     */
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        if (PlantContract.METHOD_COMPACT.equals(method)) {
+            GardenCompactor.compact(getContext());
+            return null;
+        }
+        boolean importGarden = PlantContract.METHOD_IMPORT_GARDEN.equals(method);
+        if (importGarden || PlantContract.METHOD_EXPORT_GARDEN.equals(method)) {
+            // The provider is exported, only let the app itself read and write its files
+            if (Binder.getCallingUid() != Process.myUid()) {
+                throw new SecurityException("Garden transfers are restricted to the app");
+            }
+            if (arg == null) throw new IllegalArgumentException("Missing file path");
+            SQLiteDatabase db = mPlantDbHelper.getWritableDatabase();
+            long plantCount;
+            if (importGarden) {
+                plantCount = GardenTransfer.importFile(db, arg, extras,
+                        PlantUtils.getPlantTypeCount(getContext()));
+                if (plantCount > 0) notifyChange(PlantEntry.CONTENT_URI);
+            } else {
+                plantCount = GardenTransfer.exportFile(db, arg, extras);
+            }
+            Bundle result = new Bundle();
+            result.putLong(PlantContract.EXTRA_PLANT_COUNT, plantCount);
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /***
+     * Prints the latency metrics of the process, with
+     * "adb shell dumpsys activity provider com.example.android.mygarden/.provider.PlantContentProvider"
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        PerfMetrics.dump(writer);
+    }
+
     @Override
     public String getType(@NonNull Uri uri) {
         throw new UnsupportedOperationException("Not yet implemented");
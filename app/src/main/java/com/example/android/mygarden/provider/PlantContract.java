@@ -16,6 +16,7 @@ package com.example.android.mygarden.provider;
 * limitations under the License.
 */
 
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -30,18 +31,98 @@ public class PlantContract {
     // Define the possible paths for accessing data in this contract
     // This is the path for the "plants" directory
     public static final String PATH_PLANTS = "plants";
+    // This is the path for watering every eligible plant at once ("plants/water"),
+    // or a single plant if still alive ("plants/water/#")
+    public static final String PATH_WATER = "water";
+    // This is the path for the plant most in need of water ("plants/thirstiest")
+    public static final String PATH_THIRSTIEST = "thirstiest";
+    // This is the path for the next time any plant changes status or size ("plants/next_transition")
+    public static final String PATH_NEXT_TRANSITION = "next_transition";
+    // This is the path for the plant counts by type, status and size ("plants/summary")
+    public static final String PATH_SUMMARY = "summary";
 
     public static final long INVALID_PLANT_ID = -1;
 
+    // Intent extra holding a plant Id, shared by the components opening or watering a plant
+    public static final String EXTRA_PLANT_ID = "com.example.android.mygarden.extra.PLANT_ID";
+
+    // Provider method removing the cut plants, in the provider's process (see ContentResolver#call)
+    public static final String METHOD_COMPACT = "compact";
+    // Provider methods adding the plants of a file to the garden, and writing the garden to a
+    // file. The argument is the file path, the extras hold the EXTRA_TRANSFER_FORMAT (a
+    // GardenTransfer.Format name) and the result holds the EXTRA_PLANT_COUNT transferred.
+    // Only the app's own components may call them, see GardenTransfer
+    public static final String METHOD_IMPORT_GARDEN = "importGarden";
+    public static final String METHOD_EXPORT_GARDEN = "exportGarden";
+    public static final String EXTRA_TRANSFER_FORMAT = "com.example.android.mygarden.extra.TRANSFER_FORMAT";
+    public static final String EXTRA_PLANT_COUNT = "com.example.android.mygarden.extra.PLANT_COUNT";
+
+    // Optional query parameters of the plants directory URI, to read the plants a page at a time
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+    public static final String QUERY_PARAMETER_OFFSET = "offset";
+
     public static final class PlantEntry implements BaseColumns {
 
         // TaskEntry content URI = base content URI + path
         public static final Uri CONTENT_URI =
                 BASE_CONTENT_URI.buildUpon().appendPath(PATH_PLANTS).build();
 
+        // Bulk watering URI = plants content URI + water path
+        public static final Uri CONTENT_WATER_URI =
+                CONTENT_URI.buildUpon().appendPath(PATH_WATER).build();
+
+        // Thirstiest plant URI = plants content URI + thirstiest path
+        public static final Uri CONTENT_THIRSTIEST_URI =
+                CONTENT_URI.buildUpon().appendPath(PATH_THIRSTIEST).build();
+
+        // Next transition URI = plants content URI + next transition path
+        public static final Uri CONTENT_NEXT_TRANSITION_URI =
+                CONTENT_URI.buildUpon().appendPath(PATH_NEXT_TRANSITION).build();
+
+        // Garden summary URI = plants content URI + summary path
+        public static final Uri CONTENT_SUMMARY_URI =
+                CONTENT_URI.buildUpon().appendPath(PATH_SUMMARY).build();
+
+        /**
+         * Returns the URI watering a single plant, if it is still alive
+         *
+         * @param plantId The plant Id
+         * @return The watering URI
+         */
+        public static Uri buildWaterPlantUri(long plantId) {
+            return ContentUris.withAppendedId(CONTENT_WATER_URI, plantId);
+        }
+
+        /**
+         * Returns the plants directory URI limited to a page of rows
+         *
+         * @param offset The number of rows to skip
+         * @param limit  The maximum number of rows
+         * @return The page URI
+         */
+        public static Uri buildPageUri(int offset, int limit) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_OFFSET, String.valueOf(offset))
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
         public static final String TABLE_NAME = "plants";
         public static final String COLUMN_PLANT_TYPE = "plantType";
         public static final String COLUMN_CREATION_TIME = "createdAt";
         public static final String COLUMN_LAST_WATERED_TIME = "lastWateredAt";
+        // Set to 1 when the plant is cut, the row is then hidden until it is compacted away
+        public static final String COLUMN_DELETED = "deleted";
+
+        // Only returned by the next transition URI, NULL when no plant will change anymore
+        public static final String COLUMN_NEXT_TRANSITION_TIME = "nextTransitionAt";
+
+        // Only returned by the summary URI, along with COLUMN_PLANT_TYPE: the PlantStatus and
+        // PlantSize ordinals (SIZE_EMPTY_POT for plants that have not sprouted yet) and the
+        // number of plants with that type, status and size
+        public static final String COLUMN_STATUS = "status";
+        public static final String COLUMN_SIZE = "size";
+        public static final String COLUMN_PLANT_COUNT = "plantCount";
+        public static final int SIZE_EMPTY_POT = -1;
     }
 }
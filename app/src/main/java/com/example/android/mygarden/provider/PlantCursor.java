@@ -0,0 +1,69 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+
+/**
+ * Cursor over plant rows that resolves the column indexes once, so rows can be read
+ * without a column name lookup per value
+ */
+public class PlantCursor extends CursorWrapper {
+
+    private final int mIdIndex;
+    private final int mPlantTypeIndex;
+    private final int mCreateTimeIndex;
+    private final int mWaterTimeIndex;
+
+    public PlantCursor(Cursor cursor) {
+        super(cursor);
+        mIdIndex = cursor.getColumnIndex(PlantEntry._ID);
+        mPlantTypeIndex = cursor.getColumnIndex(PlantEntry.COLUMN_PLANT_TYPE);
+        mCreateTimeIndex = cursor.getColumnIndex(PlantEntry.COLUMN_CREATION_TIME);
+        mWaterTimeIndex = cursor.getColumnIndex(PlantEntry.COLUMN_LAST_WATERED_TIME);
+    }
+
+    /**
+     * Wraps the cursor unless it is null or already a PlantCursor
+     *
+     * @param cursor The plants cursor
+     * @return The PlantCursor for the given cursor, or null
+     */
+    public static PlantCursor wrap(Cursor cursor) {
+        if (cursor == null || cursor instanceof PlantCursor) return (PlantCursor) cursor;
+        return new PlantCursor(cursor);
+    }
+
+    public long getPlantId() {
+        return getLong(mIdIndex);
+    }
+
+    public int getPlantType() {
+        return getInt(mPlantTypeIndex);
+    }
+
+    public long getCreatedAt() {
+        return getLong(mCreateTimeIndex);
+    }
+
+    public long getWateredAt() {
+        return getLong(mWaterTimeIndex);
+    }
+}
@@ -16,23 +16,131 @@ package com.example.android.mygarden.provider;
 * limitations under the License.
 */
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.support.annotation.VisibleForTesting;
 
 import com.example.android.mygarden.provider.PlantContract.PlantEntry;
 
 public class PlantDbHelper extends SQLiteOpenHelper {
 
     // The database name
-    private static final String DATABASE_NAME = "shushme.db";
+    static final String DATABASE_NAME = "shushme.db";
 
     // If you change the database schema, you must increment the database version
-    private static final int DATABASE_VERSION = 1;
+    // and add the matching step to upgradeToVersion()
+    private static final int DATABASE_VERSION = 3;
+
+    // Page cache size of the primary connection, negative values are in KiB
+    private static final int CACHE_SIZE_KIB = 4096;
+
+    private static PlantDbHelper sInstance;
+
+    // Whether the database uses write-ahead logging instead of the rollback journal
+    private final boolean mWriteAheadLogging;
+
+    /**
+     * Returns the helper shared by the provider and the other database users of this process,
+     * so they all go through the same connection pool
+     *
+     * @param context The context
+     * @return The shared PlantDbHelper
+     */
+    public static synchronized PlantDbHelper getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PlantDbHelper(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Closes the shared helper, so that the next getInstance opens the database of the
+     * current application. Unit tests get a new application and data directory each time.
+     */
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        if (sInstance != null) {
+            sInstance.close();
+            sInstance = null;
+        }
+    }
 
     // Constructor
     public PlantDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, true);
+    }
+
+    /**
+     * Constructor allowing to choose the journal mode, so that write-ahead logging can be
+     * compared against the rollback journal
+     *
+     * @param context           The context
+     * @param writeAheadLogging True to let readers run concurrently with the writer using
+     *                          write-ahead logging, false for the default rollback journal
+     */
+    public PlantDbHelper(Context context, boolean writeAheadLogging) {
+        this(context, DATABASE_NAME, writeAheadLogging);
+    }
+
+    /**
+     * Constructor opening a database other than the garden's, e.g. for the journal mode
+     * stress test
+     *
+     * @param context           The context
+     * @param name              The database file name
+     * @param writeAheadLogging True to use write-ahead logging
+     */
+    @VisibleForTesting
+    PlantDbHelper(Context context, String name, boolean writeAheadLogging) {
+        super(context, name, null, DATABASE_VERSION);
+        mWriteAheadLogging = writeAheadLogging;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(writeAheadLogging);
+        }
+    }
+
+    /**
+     * Returns whether this helper opens the database with write-ahead logging
+     *
+     * @return True when write-ahead logging is enabled
+     */
+    public boolean isWriteAheadLogging() {
+        return mWriteAheadLogging;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        configureConnection(db);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        // onConfigure and setWriteAheadLoggingEnabled are only available from Jelly Bean
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+            if (mWriteAheadLogging) db.enableWriteAheadLogging();
+            configureConnection(db);
+        }
+    }
+
+    /**
+     * Tunes the connection for the current journal mode
+     *
+     * @param db The database being opened
+     */
+    private void configureConnection(SQLiteDatabase db) {
+        // With write-ahead logging, NORMAL sync is durable against app crashes and only
+        // skips the fsync on every commit, the rollback journal needs FULL to stay consistent
+        db.execSQL("PRAGMA synchronous=" + (mWriteAheadLogging ? "NORMAL" : "FULL"));
+        db.execSQL("PRAGMA cache_size=-" + CACHE_SIZE_KIB);
+        // Lets the compactor give the pages of deleted plants back to the file system.
+        // Only applies to new databases, GardenCompactor converts existing ones
+        db.execSQL("PRAGMA auto_vacuum=" + GardenCompactor.AUTO_VACUUM_INCREMENTAL);
     }
 
     @Override
@@ -46,12 +154,51 @@ public class PlantDbHelper extends SQLiteOpenHelper {
                 PlantEntry.COLUMN_LAST_WATERED_TIME + " TIMESTAMP NOT NULL)";
 
         sqLiteDatabase.execSQL(SQL_CREATE_PLANTS_TABLE);
+
+        // The table above is the version 1 schema, bring it up to date with the same
+        // steps used to upgrade existing databases
+        onUpgrade(sqLiteDatabase, 1, DATABASE_VERSION);
     }
 
     @Override
-    public void onUpgrade(SQLiteDatabase sqLiteDatabase, int i, int i1) {
-        // For now simply drop the table and create a new one.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + PlantEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+    public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        // Apply each schema change in turn so that existing gardens are kept
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            upgradeToVersion(sqLiteDatabase, version);
+        }
+    }
+
+    /**
+     * Applies the schema changes introduced by the given database version
+     *
+     * @param sqLiteDatabase The database being upgraded
+     * @param version        The version to upgrade to, from the version right before it
+     */
+    private void upgradeToVersion(SQLiteDatabase sqLiteDatabase, int version) {
+        switch (version) {
+            case 2:
+                // Index the garden ordering (by creation time)
+                sqLiteDatabase.execSQL("CREATE INDEX IF NOT EXISTS plants_created_at_idx ON "
+                        + PlantEntry.TABLE_NAME + " (" + PlantEntry.COLUMN_CREATION_TIME + ")");
+                // Covering index for the watering order and the "alive and thirsty" range
+                // on the last watered time, which also serves plain lastWateredAt lookups
+                sqLiteDatabase.execSQL("CREATE INDEX IF NOT EXISTS plants_last_watered_at_idx ON "
+                        + PlantEntry.TABLE_NAME + " (" + PlantEntry.COLUMN_LAST_WATERED_TIME + ", "
+                        + PlantEntry.COLUMN_CREATION_TIME + ", " + PlantEntry.COLUMN_PLANT_TYPE + ")");
+                break;
+            case 3:
+                // Tombstone marking cut plants, see GardenCompactor
+                sqLiteDatabase.execSQL("ALTER TABLE " + PlantEntry.TABLE_NAME + " ADD COLUMN "
+                        + PlantEntry.COLUMN_DELETED + " INTEGER NOT NULL DEFAULT 0");
+                // Keep the last watered index covering now that every query filters on it
+                sqLiteDatabase.execSQL("DROP INDEX IF EXISTS plants_last_watered_at_idx");
+                sqLiteDatabase.execSQL("CREATE INDEX plants_last_watered_at_idx ON "
+                        + PlantEntry.TABLE_NAME + " (" + PlantEntry.COLUMN_LAST_WATERED_TIME + ", "
+                        + PlantEntry.COLUMN_CREATION_TIME + ", " + PlantEntry.COLUMN_PLANT_TYPE + ", "
+                        + PlantEntry.COLUMN_DELETED + ")");
+                break;
+            default:
+                throw new IllegalStateException("No upgrade path to database version " + version);
+        }
     }
 }
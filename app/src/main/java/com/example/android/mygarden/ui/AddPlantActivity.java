@@ -16,7 +16,6 @@ package com.example.android.mygarden.ui;
 * limitations under the License.
 */
 
-import android.content.ContentValues;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
@@ -24,9 +23,8 @@ import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.widget.ImageView;
 
-import com.example.android.mygarden.PlantWateringService;
+import com.example.android.mygarden.GardenRepository;
 import com.example.android.mygarden.R;
-import com.example.android.mygarden.provider.PlantContract;
 
 public class AddPlantActivity extends AppCompatActivity {
     private RecyclerView mTypesRecyclerView;
@@ -58,14 +56,9 @@ public class AddPlantActivity extends AppCompatActivity {
         // Extract the plant type from the tag
         ImageView imgView = (ImageView) view.findViewById(R.id.plant_type_image);
         int plantType = (int) imgView.getTag();
-        long timeNow = System.currentTimeMillis();
-        // Insert the new plant into DB
-        ContentValues contentValues = new ContentValues();
-        contentValues.put(PlantContract.PlantEntry.COLUMN_PLANT_TYPE, plantType);
-        contentValues.put(PlantContract.PlantEntry.COLUMN_CREATION_TIME, timeNow);
-        contentValues.put(PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME, timeNow);
-        getContentResolver().insert(PlantContract.PlantEntry.CONTENT_URI, contentValues);
-        PlantWateringService.startActionUpdatePlantWidgets(this);
+        // Insert the new plant into DB in the background, the garden and the widgets
+        // are updated once it is added
+        GardenRepository.getInstance(this).insertPlant(plantType, null);
         // Close this activity
         finish();
     }
@@ -0,0 +1,176 @@
+package com.example.android.mygarden.ui;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.mygarden.provider.GardenPages;
+import com.example.android.mygarden.provider.GardenSnapshot;
+import com.example.android.mygarden.provider.GardenSnapshotFile;
+import com.example.android.mygarden.provider.PlantContract;
+
+/**
+ * Loads a page of the garden in display order, either from the start or right after a
+ * given plant (keyset paging), so the cost of a page does not depend on the garden size.
+ * A page may also end at a given plant, to reload a displayed range of the garden whatever
+ * the number of plants added or removed in it.
+ * When observing the start of the garden, the first load returns the garden saved by
+ * GardenSnapshotFile, if any, and is followed right away by a load from the provider.
+ */
+public class GardenPageLoader extends AsyncTaskLoader<GardenSnapshot> {
+
+    private final long mAfterCreatedAt;
+    private final long mAfterPlantId;
+    private final long mThroughCreatedAt;
+    private final long mThroughPlantId;
+    private final int mLimit;
+    private final ForceLoadContentObserver mObserver;
+    private boolean mObserverRegistered;
+    private GardenSnapshot mSnapshot;
+    // The first load of the garden start returns the saved garden, then reloads it
+    private boolean mReadSavedGarden;
+    private boolean mReloadPending;
+
+    /**
+     * @param context        The context
+     * @param afterCreatedAt The creation time of the plant before the page
+     * @param afterPlantId   The Id of the plant before the page, or INVALID_PLANT_ID to load
+     *                       from the start of the garden
+     * @param limit          The maximum number of plants to load
+     * @param observeChanges True to reload the page whenever the garden changes
+     */
+    public GardenPageLoader(Context context, long afterCreatedAt, long afterPlantId, int limit,
+                            boolean observeChanges) {
+        this(context, afterCreatedAt, afterPlantId, 0, PlantContract.INVALID_PLANT_ID, limit,
+                observeChanges);
+    }
+
+    /**
+     * @param context          The context
+     * @param afterCreatedAt   The creation time of the plant before the page
+     * @param afterPlantId     The Id of the plant before the page, or INVALID_PLANT_ID to load
+     *                         from the start of the garden
+     * @param throughCreatedAt The creation time of the last plant of the page
+     * @param throughPlantId   The Id of the last plant of the page, or INVALID_PLANT_ID to load
+     *                         up to the limit instead
+     * @param limit            The maximum number of plants to load, when the page does not end
+     *                         at a given plant
+     * @param observeChanges   True to reload the page whenever the garden changes
+     */
+    public GardenPageLoader(Context context, long afterCreatedAt, long afterPlantId,
+                            long throughCreatedAt, long throughPlantId, int limit,
+                            boolean observeChanges) {
+        super(context);
+        mAfterCreatedAt = afterCreatedAt;
+        mAfterPlantId = afterPlantId;
+        mThroughCreatedAt = throughCreatedAt;
+        mThroughPlantId = throughPlantId;
+        mLimit = limit;
+        mObserver = observeChanges ? new ForceLoadContentObserver() : null;
+        mReadSavedGarden = observeChanges && afterPlantId == PlantContract.INVALID_PLANT_ID
+                && throughPlantId == PlantContract.INVALID_PLANT_ID;
+    }
+
+    public long getAfterCreatedAt() {
+        return mAfterCreatedAt;
+    }
+
+    public long getAfterPlantId() {
+        return mAfterPlantId;
+    }
+
+    public long getThroughCreatedAt() {
+        return mThroughCreatedAt;
+    }
+
+    public long getThroughPlantId() {
+        return mThroughPlantId;
+    }
+
+    public int getLimit() {
+        return mLimit;
+    }
+
+    /**
+     * Returns whether the page ends at a given plant rather than at the limit
+     */
+    public boolean isBounded() {
+        return mThroughPlantId != PlantContract.INVALID_PLANT_ID;
+    }
+
+    @Override
+    public GardenSnapshot loadInBackground() {
+        if (mReadSavedGarden) {
+            mReadSavedGarden = false;
+            GardenSnapshotFile savedGarden = GardenSnapshotFile.read(getContext());
+            if (savedGarden != null) {
+                mReloadPending = true;
+                GardenSnapshot snapshot = savedGarden.getSnapshot();
+                return snapshot.slice(0, Math.min(snapshot.getCount(), mLimit));
+            }
+        }
+        if (isBounded()) {
+            return GardenPages.queryRange(getContext().getContentResolver(),
+                    mAfterCreatedAt, mAfterPlantId, mThroughCreatedAt, mThroughPlantId);
+        }
+        if (mAfterPlantId == PlantContract.INVALID_PLANT_ID) {
+            return GardenPages.queryPage(getContext().getContentResolver(), 0, mLimit);
+        }
+        return GardenPages.queryPageAfter(getContext().getContentResolver(),
+                mAfterCreatedAt, mAfterPlantId, mLimit);
+    }
+
+    @Override
+    public void deliverResult(GardenSnapshot snapshot) {
+        if (isReset()) return;
+        mSnapshot = snapshot;
+        if (isStarted()) super.deliverResult(snapshot);
+        if (mReloadPending) {
+            // The saved garden is displayed, now load the current one
+            mReloadPending = false;
+            onContentChanged();
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mObserver != null && !mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(
+                    PlantContract.PlantEntry.CONTENT_URI, true, mObserver);
+            mObserverRegistered = true;
+        }
+        if (mSnapshot != null) deliverResult(mSnapshot);
+        if (takeContentChanged() || mSnapshot == null) forceLoad();
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        mSnapshot = null;
+    }
+}
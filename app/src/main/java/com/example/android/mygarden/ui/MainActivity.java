@@ -17,64 +17,304 @@ package com.example.android.mygarden.ui;
 */
 
 import android.content.Intent;
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
+import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.ImageView;
 
+import com.example.android.mygarden.MyGardenApplication;
 import com.example.android.mygarden.R;
+import com.example.android.mygarden.provider.GardenSnapshot;
+import com.example.android.mygarden.provider.GardenStateEngine;
+import com.example.android.mygarden.provider.PlantContract;
+import com.example.android.mygarden.utils.PerfMetrics;
+import com.example.android.mygarden.utils.PlantUtils;
 
-import static com.example.android.mygarden.provider.PlantContract.BASE_CONTENT_URI;
-import static com.example.android.mygarden.provider.PlantContract.PATH_PLANTS;
-import static com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import java.util.concurrent.TimeUnit;
 
 public class MainActivity
         extends AppCompatActivity
-        implements LoaderManager.LoaderCallbacks<Cursor> {
+        implements LoaderManager.LoaderCallbacks<GardenSnapshot> {
 
+    // Loads the first page, then reloads the pages in view whenever the garden changes
     private static final int GARDEN_LOADER_ID = 100;
+    // Loads the next page after the displayed plants
+    private static final int GARDEN_PAGE_LOADER_ID = 101;
+
+    private static final int SPAN_COUNT = 4;
+    // Page size and prefetch distance, in grid rows
+    private static final int PAGE_ROWS = 16;
+    private static final int PREFETCH_ROWS = 4;
+    private static final int PAGE_SIZE = SPAN_COUNT * PAGE_ROWS;
+    private static final int PREFETCH_DISTANCE = SPAN_COUNT * PREFETCH_ROWS;
+
+    private static final String ARG_AFTER_CREATED_AT = "after_created_at";
+    private static final String ARG_AFTER_PLANT_ID = "after_plant_id";
+    private static final String ARG_THROUGH_CREATED_AT = "through_created_at";
+    private static final String ARG_THROUGH_PLANT_ID = "through_plant_id";
+    private static final String ARG_LIMIT = "limit";
+
+    // Whether the startup times were recorded already, only the first activity of the
+    // process measures a cold start
+    private static boolean sStartupRecorded;
+
     private PlantListAdapter mAdapter;
 
+    private View mSkeletonView;
     private RecyclerView mGardenRecyclerView;
+    private GridLayoutManager mLayoutManager;
+    private boolean mEndReached;
+    private boolean mPageLoading;
+    private boolean mRecordFullGarden;
+    private GardenStateEngine mGardenStateEngine;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        mSkeletonView = findViewById(R.id.garden_skeleton);
+        mGardenRecyclerView = (RecyclerView) findViewById(R.id.plants_list_recycler_view);
+
+        // Start loading right away, the first frame only shows the skeleton and the garden
+        // is set up once it is drawn
+        getSupportLoaderManager().initLoader(GARDEN_LOADER_ID,
+                buildPageArgs(0, PlantContract.INVALID_PLANT_ID, PAGE_SIZE), this);
+        final boolean recordStartup = !sStartupRecorded;
+        sStartupRecorded = true;
+        mRecordFullGarden = recordStartup;
+        runOnNextFrame(new Runnable() {
+            @Override
+            public void run() {
+                if (recordStartup) recordStartupTime(PerfMetrics.STARTUP_FIRST_FRAME);
+                setUpGarden();
+            }
+        });
+    }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // The status counts come from the in-memory model of this process rather than a
+        // query, and follow the garden while the activity is visible
+        mGardenStateEngine = GardenStateEngine.getInstance(this);
+        mGardenStateEngine.setOnChangeListener(new GardenStateEngine.OnChangeListener() {
+            @Override
+            public void onGardenStateChanged() {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        updateGardenStatus();
+                    }
+                });
+            }
+        });
+        updateGardenStatus();
+    }
+
+    @Override
+    protected void onStop() {
+        mGardenStateEngine.setOnChangeListener(null);
+        super.onStop();
+    }
+
+    /**
+     * Shows the number of plants in each status as the subtitle, once the garden is loaded
+     */
+    private void updateGardenStatus() {
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar == null || !mGardenStateEngine.isLoaded()) return;
+        int[] counts = mGardenStateEngine.getStatusCounts(System.currentTimeMillis());
+        actionBar.setSubtitle(getString(R.string.garden_status,
+                counts[PlantUtils.PlantStatus.ALIVE.ordinal()],
+                counts[PlantUtils.PlantStatus.DYING.ordinal()],
+                counts[PlantUtils.PlantStatus.DEAD.ordinal()]));
+    }
+
+    /**
+     * Runs the action right after the next frame is drawn
+     *
+     * @param action The action to run
+     */
+    private void runOnNextFrame(final Runnable action) {
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posted so that the frame is not delayed by the action
+                decorView.post(action);
+                return true;
+            }
+        });
+    }
+
+    private static void recordStartupTime(String metric) {
+        long elapsedMillis = SystemClock.uptimeMillis() - MyGardenApplication.getStartUptimeMillis();
+        PerfMetrics.record(metric, TimeUnit.MILLISECONDS.toNanos(elapsedMillis));
+    }
+
+    /**
+     * Sets up the garden grid, if it is not already
+     */
+    private void setUpGarden() {
+        if (mAdapter != null) return;
         // The main activity displays the garden as a grid layout recycler view
-        mGardenRecyclerView = (RecyclerView) findViewById(R.id.plants_list_recycler_view);
-        mGardenRecyclerView.setLayoutManager(
-                new GridLayoutManager(this, 4)
-        );
-        mAdapter = new PlantListAdapter(this, null);
+        mLayoutManager = new GridLayoutManager(this, SPAN_COUNT);
+        mGardenRecyclerView.setLayoutManager(mLayoutManager);
+        mAdapter = new PlantListAdapter(this);
         mGardenRecyclerView.setAdapter(mAdapter);
+        // Load the next page before the end of the garden scrolls into view
+        mGardenRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                maybeLoadNextPage();
+                updateObservedPages();
+            }
+        });
+    }
+
+    private static Bundle buildPageArgs(long afterCreatedAt, long afterPlantId, int limit) {
+        return buildPageArgs(afterCreatedAt, afterPlantId, 0, PlantContract.INVALID_PLANT_ID, limit);
+    }
+
+    private static Bundle buildPageArgs(long afterCreatedAt, long afterPlantId,
+                                        long throughCreatedAt, long throughPlantId, int limit) {
+        Bundle args = new Bundle();
+        args.putLong(ARG_AFTER_CREATED_AT, afterCreatedAt);
+        args.putLong(ARG_AFTER_PLANT_ID, afterPlantId);
+        args.putLong(ARG_THROUGH_CREATED_AT, throughCreatedAt);
+        args.putLong(ARG_THROUGH_PLANT_ID, throughPlantId);
+        args.putInt(ARG_LIMIT, limit);
+        return args;
+    }
+
+    /**
+     * Points the garden loader at the pages in view, so a change reloads and diffs those
+     * pages only, however far the garden was scrolled. The other displayed plants are
+     * reloaded once they scroll into view. The loader is restarted only when the pages in
+     * view change.
+     */
+    private void updateObservedPages() {
+        int count = mAdapter.getItemCount();
+        int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+        int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+        if (count == 0 || firstVisible == RecyclerView.NO_POSITION || mAdapter.isDiffPending()) {
+            return;
+        }
+        GardenSnapshot snapshot = mAdapter.getSnapshot();
+        int start = firstVisible / PAGE_SIZE * PAGE_SIZE;
+        int end = Math.min(count, (Math.min(lastVisible, count - 1) / PAGE_SIZE + 1) * PAGE_SIZE);
+        long afterCreatedAt = start > 0 ? snapshot.getCreatedAt(start - 1) : 0;
+        long afterPlantId = start > 0 ? snapshot.getPlantId(start - 1) : PlantContract.INVALID_PLANT_ID;
+        Bundle args;
+        if (end < count) {
+            // Pages follow, end at the last plant in view so that none is pushed out of the range
+            args = buildPageArgs(afterCreatedAt, afterPlantId,
+                    snapshot.getCreatedAt(end - 1), snapshot.getPlantId(end - 1), 0);
+        } else {
+            // The end of the displayed garden, plants added there show up as in the first load
+            args = buildPageArgs(afterCreatedAt, afterPlantId,
+                    (end - start + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE);
+        }
+        GardenPageLoader loader =
+                (GardenPageLoader) getSupportLoaderManager().<GardenSnapshot>getLoader(GARDEN_LOADER_ID);
+        if (loader != null
+                && loader.getAfterCreatedAt() == args.getLong(ARG_AFTER_CREATED_AT)
+                && loader.getAfterPlantId() == args.getLong(ARG_AFTER_PLANT_ID)
+                && loader.getThroughCreatedAt() == args.getLong(ARG_THROUGH_CREATED_AT)
+                && loader.getThroughPlantId() == args.getLong(ARG_THROUGH_PLANT_ID)
+                && loader.getLimit() == args.getInt(ARG_LIMIT)) {
+            return;
+        }
+        getSupportLoaderManager().restartLoader(GARDEN_LOADER_ID, args, this);
+    }
 
-        getSupportLoaderManager().initLoader(GARDEN_LOADER_ID, null, this);
+    /**
+     * Starts loading the page after the displayed plants when the last displayed one is
+     * within the prefetch distance of the visible ones
+     */
+    private void maybeLoadNextPage() {
+        if (mEndReached || mPageLoading || mAdapter.isDiffPending()) return;
+        int count = mAdapter.getItemCount();
+        if (count == 0 || mLayoutManager.findLastVisibleItemPosition() < count - PREFETCH_DISTANCE) {
+            return;
+        }
+        GardenSnapshot snapshot = mAdapter.getSnapshot();
+        mPageLoading = true;
+        getSupportLoaderManager().restartLoader(GARDEN_PAGE_LOADER_ID,
+                buildPageArgs(snapshot.getCreatedAt(count - 1), snapshot.getPlantId(count - 1), PAGE_SIZE),
+                this);
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        Uri PLANT_URI = BASE_CONTENT_URI.buildUpon().appendPath(PATH_PLANTS).build();
-        return new CursorLoader(this, PLANT_URI, null,
-                null, null, PlantEntry.COLUMN_CREATION_TIME);
+    public Loader<GardenSnapshot> onCreateLoader(int id, Bundle args) {
+        return new GardenPageLoader(this,
+                args.getLong(ARG_AFTER_CREATED_AT),
+                args.getLong(ARG_AFTER_PLANT_ID),
+                args.getLong(ARG_THROUGH_CREATED_AT),
+                args.getLong(ARG_THROUGH_PLANT_ID),
+                args.getInt(ARG_LIMIT),
+                id == GARDEN_LOADER_ID);
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-        cursor.moveToFirst();
-        mAdapter.swapCursor(cursor);
+    public void onLoadFinished(Loader<GardenSnapshot> loader, GardenSnapshot snapshot) {
+        GardenPageLoader pageLoader = (GardenPageLoader) loader;
+        if (loader.getId() == GARDEN_LOADER_ID) {
+            // The plants may arrive before the first frame
+            setUpGarden();
+            if (pageLoader.isBounded() && mAdapter.getItemCount() == 0) {
+                // A range kept from before a configuration change, start over from the top
+                getSupportLoaderManager().restartLoader(GARDEN_LOADER_ID,
+                        buildPageArgs(0, PlantContract.INVALID_PLANT_ID, PAGE_SIZE), this);
+                return;
+            }
+            // Replace the displayed plants of the loaded range, which the rows outside of it
+            // still delimit
+            GardenSnapshot displayed = mAdapter.getSnapshot();
+            int start = pageLoader.getAfterPlantId() == PlantContract.INVALID_PLANT_ID ? 0
+                    : displayed.indexAfter(pageLoader.getAfterCreatedAt(), pageLoader.getAfterPlantId());
+            int end;
+            if (pageLoader.isBounded()) {
+                end = displayed.indexAfter(pageLoader.getThroughCreatedAt(), pageLoader.getThroughPlantId());
+                // Plants may have been added after the displayed ones, look again at the end
+                mEndReached = false;
+            } else {
+                end = displayed.getCount();
+                mEndReached = snapshot.getCount() < pageLoader.getLimit();
+            }
+            mAdapter.swapRange(start, Math.max(start, end), snapshot);
+            if (mSkeletonView.getVisibility() != View.GONE) {
+                mSkeletonView.setVisibility(View.GONE);
+                if (mRecordFullGarden) {
+                    mRecordFullGarden = false;
+                    runOnNextFrame(new Runnable() {
+                        @Override
+                        public void run() {
+                            recordStartupTime(PerfMetrics.STARTUP_FULL_GARDEN);
+                        }
+                    });
+                }
+            }
+        } else {
+            mPageLoading = false;
+            if (mAdapter.appendPage(snapshot, pageLoader.getAfterCreatedAt(), pageLoader.getAfterPlantId())) {
+                mEndReached = snapshot.getCount() < pageLoader.getLimit();
+                // The pages in view no longer end the displayed garden
+                updateObservedPages();
+            }
+        }
     }
 
     @Override
-    public void onLoaderReset(Loader loader) {
+    public void onLoaderReset(Loader<GardenSnapshot> loader) {
 
     }
 
@@ -17,7 +17,6 @@ package com.example.android.mygarden.ui;
 */
 
 import android.content.ContentUris;
-import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
@@ -29,9 +28,11 @@ import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.example.android.mygarden.GardenRepository;
 import com.example.android.mygarden.PlantWateringService;
 import com.example.android.mygarden.R;
 import com.example.android.mygarden.provider.PlantContract;
+import com.example.android.mygarden.provider.PlantCursor;
 import com.example.android.mygarden.utils.PlantUtils;
 
 import static com.example.android.mygarden.provider.PlantContract.BASE_CONTENT_URI;
@@ -41,7 +42,7 @@ public class PlantDetailActivity extends AppCompatActivity
         implements LoaderManager.LoaderCallbacks<Cursor> {
 
     private static final int SINGLE_LOADER_ID = 200;
-    public static final String EXTRA_PLANT_ID = "com.example.android.mygarden.extra.PLANT_ID";
+    public static final String EXTRA_PLANT_ID = PlantContract.EXTRA_PLANT_ID;
     long mPlantId;
 
     @Override
@@ -72,14 +73,12 @@ public class PlantDetailActivity extends AppCompatActivity
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
         if (cursor == null || cursor.getCount() < 1) return;
-        cursor.moveToFirst();
-        int createTimeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_CREATION_TIME);
-        int waterTimeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_LAST_WATERED_TIME);
-        int planTypeIndex = cursor.getColumnIndex(PlantContract.PlantEntry.COLUMN_PLANT_TYPE);
-
-        int plantType = cursor.getInt(planTypeIndex);
-        long createdAt = cursor.getLong(createTimeIndex);
-        long wateredAt = cursor.getLong(waterTimeIndex);
+        PlantCursor plantCursor = PlantCursor.wrap(cursor);
+        plantCursor.moveToFirst();
+
+        int plantType = plantCursor.getPlantType();
+        long createdAt = plantCursor.getCreatedAt();
+        long wateredAt = plantCursor.getWateredAt();
         long timeNow = System.currentTimeMillis();
 
         int plantImgRes = PlantUtils.getPlantImageRes(this, timeNow - createdAt, timeNow - wateredAt, plantType);
@@ -108,10 +107,8 @@ public class PlantDetailActivity extends AppCompatActivity
     }
 
     public void onCutButtonClick(View view) {
-        Uri SINGLE_PLANT_URI = ContentUris.withAppendedId(
-                BASE_CONTENT_URI.buildUpon().appendPath(PATH_PLANTS).build(), mPlantId);
-        getContentResolver().delete(SINGLE_PLANT_URI, null, null);
-        PlantWateringService.startActionUpdatePlantWidgets(this);
+        // Cut in the background, which then updates the widgets
+        GardenRepository.getInstance(this).cutPlant(mPlantId, null);
         finish();
     }
 }
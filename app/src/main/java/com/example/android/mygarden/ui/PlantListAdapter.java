@@ -17,7 +17,11 @@ package com.example.android.mygarden.ui;
 */
 
 import android.content.Context;
-import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.os.AsyncTask;
+import android.support.v4.util.LongSparseArray;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -26,22 +30,41 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.example.android.mygarden.R;
-import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.provider.GardenSnapshot;
+import com.example.android.mygarden.utils.PerfMetrics;
+import com.example.android.mygarden.utils.PlantBitmapCache;
 import com.example.android.mygarden.utils.PlantUtils;
 
 public class PlantListAdapter extends RecyclerView.Adapter<PlantListAdapter.PlantViewHolder> {
 
+    // Gardens with more rows than this (old and new combined) are diffed off the main thread
+    private static final int ASYNC_DIFF_THRESHOLD = 500;
+
     private Context mContext;
-    private Cursor mCursor;
+    private PlantBitmapCache mBitmapCache;
+    private int mImageWidth;
+    private int mImageHeight;
+    private GardenSnapshot mSnapshot;
+    // Image each plant was last bound with, by plant Id. Cells are bound at different times,
+    // so this, not the plant's row, tells whether a cell shows an outdated image. Entries of
+    // recycled cells are kept, a change for an item without a view costs no bind.
+    private final LongSparseArray<Integer> mBoundImageRes = new LongSparseArray<>();
+    // Incremented on every swap so that stale background diffs are discarded
+    private int mDiffGeneration;
+    private boolean mDiffPending;
 
     /**
-     * Constructor using the context and the db cursor
+     * Constructor using the context, starting with an empty garden
      *
      * @param context the calling context/activity
      */
-    public PlantListAdapter(Context context, Cursor cursor) {
+    public PlantListAdapter(Context context) {
         this.mContext = context;
-        this.mCursor = cursor;
+        this.mBitmapCache = PlantBitmapCache.getInstance(context);
+        this.mImageWidth = context.getResources().getDimensionPixelSize(R.dimen.plant_image_width);
+        this.mImageHeight = context.getResources().getDimensionPixelSize(R.dimen.plant_image_height);
+        this.mSnapshot = GardenSnapshot.EMPTY;
+        setHasStableIds(true);
     }
 
     /**
@@ -61,46 +84,157 @@ public class PlantListAdapter extends RecyclerView.Adapter<PlantListAdapter.Plan
 
     @Override
     public void onBindViewHolder(PlantViewHolder holder, int position) {
+        long start = PerfMetrics.begin(PerfMetrics.ADAPTER_BIND);
+        try {
+            bindPlant(holder, position);
+        } finally {
+            PerfMetrics.end(PerfMetrics.ADAPTER_BIND, start);
+        }
+    }
 
-        mCursor.moveToPosition(position);
-        int idIndex = mCursor.getColumnIndex(PlantEntry._ID);
-        int createTimeIndex = mCursor.getColumnIndex(PlantEntry.COLUMN_CREATION_TIME);
-        int waterTimeIndex = mCursor.getColumnIndex(PlantEntry.COLUMN_LAST_WATERED_TIME);
-        int plantTypeIndex = mCursor.getColumnIndex(PlantEntry.COLUMN_PLANT_TYPE);
-
-        long plantId = mCursor.getLong(idIndex);
-        int plantType = mCursor.getInt(plantTypeIndex);
-        long createdAt = mCursor.getLong(createTimeIndex);
-        long wateredAt = mCursor.getLong(waterTimeIndex);
+    private void bindPlant(PlantViewHolder holder, int position) {
+        long plantId = mSnapshot.getPlantId(position);
+        int plantType = mSnapshot.getPlantType(position);
+        long createdAt = mSnapshot.getCreatedAt(position);
+        long wateredAt = mSnapshot.getWateredAt(position);
         long timeNow = System.currentTimeMillis();
 
         int imgRes = PlantUtils.getPlantImageRes(mContext, timeNow - createdAt, timeNow - wateredAt, plantType);
 
-        holder.plantImageView.setImageResource(imgRes);
+        Bitmap bitmap = mBitmapCache.getBitmap(imgRes, mImageWidth, mImageHeight);
+        if (bitmap != null) holder.plantImageView.setImageBitmap(bitmap);
+        else holder.plantImageView.setImageResource(imgRes);
         holder.plantNameView.setText(String.valueOf(plantId));
         holder.plantImageView.setTag(plantId);
+        mBoundImageRes.put(plantId, imgRes);
     }
 
-    public void swapCursor(Cursor newCursor) {
-        if (mCursor != null) {
-            mCursor.close();
+    /**
+     * Replaces the displayed plants between the given positions with the new ones, dispatching
+     * only the item changes, insertions and removals within that range, so that reloading part
+     * of a long garden costs the size of the part
+     *
+     * @param start The position of the first replaced plant, inclusive
+     * @param end   The position of the last replaced plant, exclusive
+     * @param rows  The plants to display in their place
+     */
+    public void swapRange(final int start, int end, GardenSnapshot rows) {
+        final int generation = ++mDiffGeneration;
+        final long timeNow = System.currentTimeMillis();
+        int count = mSnapshot.getCount();
+        final GardenSnapshot newSnapshot = GardenSnapshot.concat(
+                GardenSnapshot.concat(mSnapshot.slice(0, start), rows), mSnapshot.slice(end, count));
+        final SnapshotDiffCallback callback = new SnapshotDiffCallback(mContext,
+                mSnapshot.slice(start, end), mBoundImageRes.clone(), rows, timeNow);
+        if (end - start + rows.getCount() < ASYNC_DIFF_THRESHOLD) {
+            mDiffPending = false;
+            applySnapshot(newSnapshot, start, DiffUtil.calculateDiff(callback, false));
+            return;
         }
-        mCursor = newCursor;
-        if (mCursor != null) {
-            // Force the RecyclerView to refresh
-            this.notifyDataSetChanged();
+        mDiffPending = true;
+        new AsyncTask<Void, Void, DiffUtil.DiffResult>() {
+            @Override
+            protected DiffUtil.DiffResult doInBackground(Void... params) {
+                return DiffUtil.calculateDiff(callback, false);
+            }
+
+            @Override
+            protected void onPostExecute(DiffUtil.DiffResult diffResult) {
+                // Drop the result if another swap happened meanwhile
+                if (generation != mDiffGeneration) return;
+                mDiffPending = false;
+                applySnapshot(newSnapshot, start, diffResult);
+            }
+        }.execute();
+    }
+
+    /**
+     * Returns whether a background diff is still to be applied
+     */
+    public boolean isDiffPending() {
+        return mDiffPending;
+    }
+
+    /**
+     * Appends a page of plants loaded after the given plant. The page is dropped if the
+     * displayed plants changed since it was requested and no longer end with that plant.
+     *
+     * @param page           The plants to append
+     * @param afterCreatedAt The creation time of the plant the page was loaded after
+     * @param afterPlantId   The Id of the plant the page was loaded after
+     * @return True if the page was appended
+     */
+    public boolean appendPage(GardenSnapshot page, long afterCreatedAt, long afterPlantId) {
+        int count = mSnapshot.getCount();
+        if (mDiffPending || count == 0
+                || mSnapshot.getCreatedAt(count - 1) != afterCreatedAt
+                || mSnapshot.getPlantId(count - 1) != afterPlantId) {
+            return false;
         }
+        mSnapshot = GardenSnapshot.concat(mSnapshot, page);
+        notifyItemRangeInserted(count, page.getCount());
+        return true;
+    }
+
+    /**
+     * Returns the plants currently displayed
+     */
+    public GardenSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Makes the new snapshot current and notifies the RecyclerView of the differences
+     *
+     * @param newSnapshot The snapshot to display
+     * @param start       The position the diffed range starts at
+     * @param diffResult  The differences from the currently displayed range
+     */
+    private void applySnapshot(GardenSnapshot newSnapshot, final int start,
+                               DiffUtil.DiffResult diffResult) {
+        mSnapshot = newSnapshot;
+        diffResult.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(start + position, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(start + position, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(start + fromPosition, start + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                notifyItemRangeChanged(start + position, count, payload);
+            }
+        });
     }
 
     /**
-     * Returns the number of items in the cursor
+     * Returns the number of plants displayed
      *
-     * @return Number of items in the cursor, or 0 if null
+     * @return Number of plants, or 0 if there is no data
      */
     @Override
     public int getItemCount() {
-        if (mCursor == null) return 0;
-        return mCursor.getCount();
+        return mSnapshot.getCount();
+    }
+
+    /**
+     * Returns the database plant Id at the given position, used as the stable item Id
+     *
+     * @param position The adapter position
+     * @return The plant Id
+     */
+    @Override
+    public long getItemId(int position) {
+        return mSnapshot.getPlantId(position);
     }
 
     /**
@@ -118,4 +252,58 @@ public class PlantListAdapter extends RecyclerView.Adapter<PlantListAdapter.Plan
         }
 
     }
+
+    /**
+     * Compares two snapshots, matching items by plant Id. An item changed when its image
+     * did, which also happens without any write as plants grow and dry out: the new rows are
+     * resolved at the time of the diff and compared with the image their cell was bound with.
+     * Items never bound have no image to update and only change with their row.
+     */
+    private static class SnapshotDiffCallback extends DiffUtil.Callback {
+
+        private final Context mContext;
+        private final GardenSnapshot mOld;
+        private final LongSparseArray<Integer> mBoundImageRes;
+        private final GardenSnapshot mNew;
+        private final long mNewTime;
+
+        SnapshotDiffCallback(Context context, GardenSnapshot oldSnapshot,
+                             LongSparseArray<Integer> boundImageRes,
+                             GardenSnapshot newSnapshot, long newTime) {
+            mContext = context.getApplicationContext();
+            mOld = oldSnapshot;
+            mBoundImageRes = boundImageRes;
+            mNew = newSnapshot;
+            mNewTime = newTime;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.getCount();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.getCount();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOld.getPlantId(oldItemPosition) == mNew.getPlantId(newItemPosition);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            Integer boundImageRes = mBoundImageRes.get(mOld.getPlantId(oldItemPosition));
+            if (boundImageRes == null) {
+                return mOld.contentsEqual(oldItemPosition, mNew, newItemPosition);
+            }
+            return boundImageRes == getImageRes(mNew, newItemPosition, mNewTime);
+        }
+
+        private int getImageRes(GardenSnapshot snapshot, int position, long timeNow) {
+            return PlantUtils.getPlantImageRes(mContext, timeNow - snapshot.getCreatedAt(position),
+                    timeNow - snapshot.getWateredAt(position), snapshot.getPlantType(position));
+        }
+    }
 }
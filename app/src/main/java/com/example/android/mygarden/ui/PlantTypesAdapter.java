@@ -17,8 +17,6 @@ package com.example.android.mygarden.ui;
 */
 
 import android.content.Context;
-import android.content.res.Resources;
-import android.content.res.TypedArray;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -32,7 +30,7 @@ import com.example.android.mygarden.utils.PlantUtils;
 public class PlantTypesAdapter extends RecyclerView.Adapter<PlantTypesAdapter.PlantViewHolder> {
 
     Context mContext;
-    TypedArray mPlantTypes;
+    int mPlantTypeCount;
 
     /**
      * Constructor using the context and the db cursor
@@ -41,8 +39,7 @@ public class PlantTypesAdapter extends RecyclerView.Adapter<PlantTypesAdapter.Pl
      */
     public PlantTypesAdapter(Context context) {
         mContext = context;
-        Resources res = mContext.getResources();
-        mPlantTypes = res.obtainTypedArray(R.array.plant_types);
+        mPlantTypeCount = PlantUtils.getPlantTypeCount(mContext);
     }
 
     /**
@@ -78,8 +75,7 @@ public class PlantTypesAdapter extends RecyclerView.Adapter<PlantTypesAdapter.Pl
      */
     @Override
     public int getItemCount() {
-        if (mPlantTypes == null) return 0;
-        return mPlantTypes.length();
+        return mPlantTypeCount;
     }
 
     /**
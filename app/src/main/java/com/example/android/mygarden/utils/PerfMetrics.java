@@ -0,0 +1,210 @@
+package com.example.android.mygarden.utils;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.support.v4.os.TraceCompat;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lightweight instrumentation of the hot paths: each section shows up in systrace and its
+ * latency is recorded in an in-memory histogram, readable with {@link #dump} without a
+ * profiler attached.
+ * <p>
+ * Usage, on a single thread:
+ * <pre>
+ * long start = PerfMetrics.begin(PerfMetrics.PROVIDER_QUERY);
+ * try { ... } finally { PerfMetrics.end(PerfMetrics.PROVIDER_QUERY, start); }
+ * </pre>
+ */
+public final class PerfMetrics {
+
+    public static final String PROVIDER_QUERY = "provider.query";
+    public static final String PROVIDER_INSERT = "provider.insert";
+    public static final String PROVIDER_BULK_INSERT = "provider.bulkInsert";
+    public static final String PROVIDER_UPDATE = "provider.update";
+    public static final String PROVIDER_DELETE = "provider.delete";
+    public static final String PROVIDER_APPLY_BATCH = "provider.applyBatch";
+    public static final String SERVICE_WATER_PLANTS = "service.waterPlants";
+    public static final String SERVICE_UPDATE_WIDGETS = "service.updatePlantWidgets";
+    public static final String SERVICE_COMPACT_GARDEN = "service.compactGarden";
+    public static final String SERVICE_WRITE_SNAPSHOT = "service.writeSnapshot";
+    public static final String WIDGET_GRID_DATA_CHANGED = "widget.grid.onDataSetChanged";
+    public static final String WIDGET_GRID_GET_VIEW = "widget.grid.getViewAt";
+    public static final String ADAPTER_BIND = "adapter.bind";
+    // Measured from the application creation, on cold starts only
+    public static final String STARTUP_FIRST_FRAME = "startup.firstFrame";
+    public static final String STARTUP_FULL_GARDEN = "startup.fullGarden";
+    // Proportional set size of the process after the last widget refresh, in KiB. With a
+    // separate widget process this understates the cost of a refresh, since querying the
+    // provider starts the app process too, see WIDGET_REFRESH_TOTAL_PSS
+    public static final String WIDGET_REFRESH_PSS = "widget.refresh.pssKb";
+    // Proportional set size of all the running processes of the app after the last widget
+    // refresh, in KiB
+    public static final String WIDGET_REFRESH_TOTAL_PSS = "widget.refresh.totalPssKb";
+
+    // Histogram buckets by power of two microseconds, the last one collects everything above
+    private static final int BUCKET_COUNT = 32;
+
+    // Histograms by section name, guarded by the map itself
+    private static final Map<String, Histogram> sHistograms = new HashMap<>();
+    // Last reported values by name, guarded by the map itself
+    private static final Map<String, Long> sValues = new HashMap<>();
+
+    private PerfMetrics() {
+    }
+
+    /**
+     * Opens a trace section
+     *
+     * @param section The section name
+     * @return The start time to pass to {@link #end}
+     */
+    public static long begin(String section) {
+        TraceCompat.beginSection(section);
+        return System.nanoTime();
+    }
+
+    /**
+     * Closes the trace section opened last on this thread and records its duration
+     *
+     * @param section    The section name given to {@link #begin}
+     * @param startNanos The value returned by {@link #begin}
+     */
+    public static void end(String section, long startNanos) {
+        long durationNanos = System.nanoTime() - startNanos;
+        TraceCompat.endSection();
+        record(section, durationNanos);
+    }
+
+    /**
+     * Records a duration measured outside of a trace section
+     *
+     * @param name          The metric name
+     * @param durationNanos The duration in nanoseconds
+     */
+    public static void record(String name, long durationNanos) {
+        getHistogram(name).add(durationNanos / 1000);
+    }
+
+    /**
+     * Records the current value of a quantity other than a duration, e.g. memory use
+     *
+     * @param name  The metric name
+     * @param value The value
+     */
+    public static void setValue(String name, long value) {
+        synchronized (sValues) {
+            sValues.put(name, value);
+        }
+    }
+
+    private static Histogram getHistogram(String name) {
+        synchronized (sHistograms) {
+            Histogram histogram = sHistograms.get(name);
+            if (histogram == null) {
+                histogram = new Histogram();
+                sHistograms.put(name, histogram);
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * Forgets all the recorded durations
+     */
+    public static void reset() {
+        synchronized (sHistograms) {
+            sHistograms.clear();
+        }
+        synchronized (sValues) {
+            sValues.clear();
+        }
+    }
+
+    /**
+     * Prints the count and latency percentiles of every metric, then the last values,
+     * one per line. Metrics are kept per process.
+     *
+     * @param writer Where to print
+     */
+    public static void dump(PrintWriter writer) {
+        writer.println("Process " + android.os.Process.myPid() + ":");
+        List<String> names;
+        synchronized (sHistograms) {
+            names = new ArrayList<>(sHistograms.keySet());
+        }
+        Collections.sort(names);
+        writer.println("Latencies (us, upper bound of the power of two bucket):");
+        for (String name : names) {
+            getHistogram(name).dump(name, writer);
+        }
+        Map<String, Long> values;
+        synchronized (sValues) {
+            values = new TreeMap<>(sValues);
+        }
+        writer.println("Values:");
+        for (Map.Entry<String, Long> value : values.entrySet()) {
+            writer.println("  " + value.getKey() + ": " + value.getValue());
+        }
+    }
+
+    private static class Histogram {
+        private final long[] mBuckets = new long[BUCKET_COUNT];
+        private long mCount;
+        private long mTotalMicros;
+        private long mMaxMicros;
+
+        synchronized void add(long micros) {
+            // Bucket i holds durations below 2^i us
+            int bucket = 64 - Long.numberOfLeadingZeros(micros);
+            mBuckets[Math.min(bucket, BUCKET_COUNT - 1)]++;
+            mCount++;
+            mTotalMicros += micros;
+            if (micros > mMaxMicros) mMaxMicros = micros;
+        }
+
+        /**
+         * Returns the upper bound of the bucket holding the given percentile
+         */
+        private long percentile(int percent) {
+            long rank = (mCount * percent + 99) / 100;
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+                seen += mBuckets[i];
+                if (seen >= rank) return Math.min(1L << i, mMaxMicros);
+            }
+            return mMaxMicros;
+        }
+
+        synchronized void dump(String name, PrintWriter writer) {
+            if (mCount == 0) return;
+            writer.println("  " + name + ": count=" + mCount
+                    + " mean=" + (mTotalMicros / mCount)
+                    + " p50=" + percentile(50)
+                    + " p90=" + percentile(90)
+                    + " p99=" + percentile(99)
+                    + " max=" + mMaxMicros);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.android.mygarden.utils;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+
+/**
+ * Process-wide LRU cache of plant images decoded to the size they are displayed at, for the
+ * in-app garden grid. The widgets send resource Ids instead, as bitmaps in RemoteViews are
+ * copied through the binder for every item.
+ */
+public class PlantBitmapCache {
+
+    // Share of the maximum heap used for cached bitmaps
+    private static final int CACHE_HEAP_FRACTION = 8;
+
+    private static PlantBitmapCache sInstance;
+
+    private final Resources mResources;
+    // Keyed by (drawable id, target width, target height), sized in KiB
+    private final LruCache<Long, Bitmap> mCache;
+
+    private PlantBitmapCache(Context context) {
+        mResources = context.getApplicationContext().getResources();
+        int maxSizeKib = (int) (Runtime.getRuntime().maxMemory() / 1024 / CACHE_HEAP_FRACTION);
+        mCache = new LruCache<Long, Bitmap>(maxSizeKib) {
+            @Override
+            protected int sizeOf(Long key, Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+    }
+
+    public static synchronized PlantBitmapCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PlantBitmapCache(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the bitmap of the drawable resource decoded close to the requested size,
+     * decoding and caching it on a miss
+     *
+     * @param resId     The drawable resource of the plant image
+     * @param reqWidth  The width (in pixels) the image is displayed at
+     * @param reqHeight The height (in pixels) the image is displayed at
+     * @return The bitmap, or null if the resource is not a bitmap (e.g. a vector drawable)
+     */
+    public Bitmap getBitmap(int resId, int reqWidth, int reqHeight) {
+        Long key = ((long) resId << 32) | ((long) (reqWidth & 0xFFFF) << 16) | (reqHeight & 0xFFFF);
+        Bitmap bitmap = mCache.get(key);
+        if (bitmap == null) {
+            bitmap = decodeSampledBitmap(resId, reqWidth, reqHeight);
+            if (bitmap != null) mCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes the drawable resource, subsampling it to the smallest power of two that keeps
+     * it at least as large as the requested size
+     */
+    private Bitmap decodeSampledBitmap(int resId, int reqWidth, int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, resId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+        int inSampleSize = 1;
+        while (options.outWidth / (inSampleSize * 2) >= reqWidth
+                && options.outHeight / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = inSampleSize;
+        return BitmapFactory.decodeResource(mResources, resId, options);
+    }
+
+    public int hitCount() {
+        return mCache.hitCount();
+    }
+
+    public int missCount() {
+        return mCache.missCount();
+    }
+
+    public int evictionCount() {
+        return mCache.evictionCount();
+    }
+
+    /**
+     * Returns the size of the cached bitmaps in KiB
+     */
+    public int size() {
+        return mCache.size();
+    }
+
+    public void clear() {
+        mCache.evictAll();
+    }
+}
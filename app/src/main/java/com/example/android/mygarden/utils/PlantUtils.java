@@ -16,7 +16,9 @@ package com.example.android.mygarden.utils;
 * limitations under the License.
 */
 
+import android.content.ComponentCallbacks;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 
@@ -29,11 +31,11 @@ public class PlantUtils {
     private static final long DAY_MILLISECONDS = HOUR_MILLISECONDS * 24;
 
     public static final long MIN_AGE_BETWEEN_WATER = HOUR_MILLISECONDS * 2; // can water every 2 hours
-    static final long DANGER_AGE_WITHOUT_WATER = HOUR_MILLISECONDS * 6; // in danger after 6 hours
+    public static final long DANGER_AGE_WITHOUT_WATER = HOUR_MILLISECONDS * 6; // in danger after 6 hours
     public static final long MAX_AGE_WITHOUT_WATER = HOUR_MILLISECONDS * 12; // plants die after 12 hours
-    static final long TINY_AGE = DAY_MILLISECONDS * 0; // plants start tiny
-    static final long JUVENILE_AGE = DAY_MILLISECONDS * 1; // 1 day old
-    static final long FULLY_GROWN_AGE = DAY_MILLISECONDS * 2; // 2 days old
+    public static final long TINY_AGE = DAY_MILLISECONDS * 0; // plants start tiny
+    public static final long JUVENILE_AGE = DAY_MILLISECONDS * 1; // 1 day old
+    public static final long FULLY_GROWN_AGE = DAY_MILLISECONDS * 2; // 2 days old
 
 
     public enum PlantStatus {ALIVE, DYING, DEAD}
@@ -44,6 +46,26 @@ public class PlantUtils {
 
     ;
 
+    // Cached enum values, since values() returns a new array on every call
+    private static final PlantStatus[] PLANT_STATUSES = PlantStatus.values();
+    private static final PlantSize[] PLANT_SIZES = PlantSize.values();
+
+    // Resolved drawable ids indexed by [type][status.ordinal()][size.ordinal()],
+    // built once per process and dropped whenever the configuration changes
+    private static volatile int[][][] sPlantImgResTable;
+    private static boolean sConfigCallbacksRegistered;
+
+    private static final ComponentCallbacks sConfigCallbacks = new ComponentCallbacks() {
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+            sPlantImgResTable = null;
+        }
+
+        @Override
+        public void onLowMemory() {
+        }
+    };
+
     /**
      * Returns the corresponding image resource of the plant given the plant's age and
      * time since it was last watered
@@ -81,15 +103,83 @@ public class PlantUtils {
      * @return Image Resource to the correct plant image
      */
     public static int getPlantImgRes(Context context, int type, PlantStatus status, PlantSize size) {
+        int[][][] table = getPlantImgResTable(context);
+        if (type < 0 || type >= table.length) return 0;
+        return table[type][status.ordinal()][size.ordinal()];
+    }
+
+    /**
+     * Returns the number of plant types listed in arrays.xml
+     *
+     * @param context The context
+     * @return The number of plant types
+     */
+    public static int getPlantTypeCount(Context context) {
+        return getPlantImgResTable(context).length;
+    }
+
+    /**
+     * Builds the drawable resolution table ahead of its first use, e.g. during startup on a
+     * background thread
+     *
+     * @param context The context
+     */
+    public static void warmUp(Context context) {
+        getPlantImgResTable(context);
+    }
+
+    /**
+     * Returns the drawable resolution table, building it on first use or after a
+     * configuration change
+     *
+     * @param context The context
+     * @return The table of image resources indexed by [type][status][size]
+     */
+    private static int[][][] getPlantImgResTable(Context context) {
+        int[][][] table = sPlantImgResTable;
+        if (table != null) return table;
+        synchronized (PlantUtils.class) {
+            if (sPlantImgResTable == null) {
+                if (!sConfigCallbacksRegistered) {
+                    context.getApplicationContext().registerComponentCallbacks(sConfigCallbacks);
+                    sConfigCallbacksRegistered = true;
+                }
+                sPlantImgResTable = buildPlantImgResTable(context);
+            }
+            return sPlantImgResTable;
+        }
+    }
+
+    /**
+     * Resolves the image resource of every type, status and size combination
+     *
+     * @param context The context
+     * @return The table of image resources indexed by [type][status][size]
+     */
+    private static int[][][] buildPlantImgResTable(Context context) {
         Resources res = context.getResources();
+        String packageName = context.getPackageName();
         TypedArray plantTypes = res.obtainTypedArray(R.array.plant_types);
-        String resName = plantTypes.getString(type);
-        if (status == PlantStatus.DYING) resName += "_danger";
-        else if (status == PlantStatus.DEAD) resName += "_dead";
-        if (size == PlantSize.TINY) resName += "_1";
-        else if (size == PlantSize.JUVENILE) resName += "_2";
-        else if (size == PlantSize.FULLY_GROWN) resName += "_3";
-        return context.getResources().getIdentifier(resName, "drawable", context.getPackageName());
+        int[][][] table = new int[plantTypes.length()][PLANT_STATUSES.length][PLANT_SIZES.length];
+        StringBuilder resName = new StringBuilder();
+        for (int type = 0; type < table.length; type++) {
+            String typeName = plantTypes.getString(type);
+            for (PlantStatus status : PLANT_STATUSES) {
+                for (PlantSize size : PLANT_SIZES) {
+                    resName.setLength(0);
+                    resName.append(typeName);
+                    if (status == PlantStatus.DYING) resName.append("_danger");
+                    else if (status == PlantStatus.DEAD) resName.append("_dead");
+                    if (size == PlantSize.TINY) resName.append("_1");
+                    else if (size == PlantSize.JUVENILE) resName.append("_2");
+                    else if (size == PlantSize.FULLY_GROWN) resName.append("_3");
+                    table[type][status.ordinal()][size.ordinal()] =
+                            res.getIdentifier(resName.toString(), "drawable", packageName);
+                }
+            }
+        }
+        plantTypes.recycle();
+        return table;
     }
 
     /**
@@ -103,6 +193,7 @@ public class PlantUtils {
         Resources res = context.getResources();
         TypedArray plantTypes = res.obtainTypedArray(R.array.plant_types);
         String resName = plantTypes.getString(type);
+        plantTypes.recycle();
         int resId = context.getResources().getIdentifier(resName, "string", context.getPackageName());
         try {
             return context.getResources().getString(resId);
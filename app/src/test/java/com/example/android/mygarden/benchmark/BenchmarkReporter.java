@@ -0,0 +1,127 @@
+package com.example.android.mygarden.benchmark;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Times the benchmarks of a class and writes their results as JSON to
+ * &lt;benchmark.outputDir&gt;/&lt;class name&gt;.json, so runs can be compared across changes.
+ * <p>
+ * The benchmarks run on the JVM under Robolectric: the numbers compare implementations with
+ * each other, they are not the latencies seen on a device.
+ */
+public class BenchmarkReporter {
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 10;
+
+    /**
+     * A measured operation. {@link #setUp} runs before each run and is not timed.
+     */
+    public abstract static class Task {
+
+        public void setUp() throws Exception {
+        }
+
+        public abstract void run() throws Exception;
+    }
+
+    private final Class<?> mBenchmarkClass;
+    private final List<String> mResults = new ArrayList<>();
+
+    public BenchmarkReporter(Class<?> benchmarkClass) {
+        mBenchmarkClass = benchmarkClass;
+    }
+
+    /**
+     * Runs the task a few times to warm the JIT up, then times it
+     *
+     * @param name       The benchmark name
+     * @param gardenSize The number of plants the task runs against, or 0
+     * @param operations The number of operations a single run performs
+     * @param task       The task
+     */
+    public void measure(String name, int gardenSize, int operations, Task task) throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            task.setUp();
+            task.run();
+        }
+        long[] nanosPerOperation = new long[MEASURED_RUNS];
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            task.setUp();
+            long start = System.nanoTime();
+            task.run();
+            nanosPerOperation[i] = (System.nanoTime() - start) / operations;
+        }
+        Arrays.sort(nanosPerOperation);
+        long total = 0;
+        for (long nanos : nanosPerOperation) total += nanos;
+        String result = String.format(Locale.US,
+                "{\"name\": \"%s\", \"gardenSize\": %d, \"operations\": %d, \"runs\": %d, "
+                        + "\"minNsPerOp\": %d, \"medianNsPerOp\": %d, \"meanNsPerOp\": %d}",
+                name, gardenSize, operations, MEASURED_RUNS, nanosPerOperation[0],
+                nanosPerOperation[MEASURED_RUNS / 2], total / MEASURED_RUNS);
+        System.out.println(mBenchmarkClass.getSimpleName() + ": " + result);
+        mResults.add(result);
+    }
+
+    /**
+     * Adds a piece of text to the results, e.g. the plan of a measured query
+     *
+     * @param name       The benchmark name
+     * @param gardenSize The number of plants, or 0
+     * @param key        The name of the value
+     * @param value      The text
+     */
+    public void report(String name, int gardenSize, String key, String value) {
+        String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        String result = String.format(Locale.US, "{\"name\": \"%s\", \"gardenSize\": %d, \"%s\": \"%s\"}",
+                name, gardenSize, key, escaped);
+        System.out.println(mBenchmarkClass.getSimpleName() + ": " + result);
+        mResults.add(result);
+    }
+
+    /**
+     * Writes the results measured so far, replacing those of the previous run
+     */
+    public void write() throws IOException {
+        File outputDir = new File(System.getProperty("benchmark.outputDir", "build/benchmark-results"));
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create " + outputDir);
+        }
+        File file = new File(outputDir, mBenchmarkClass.getSimpleName() + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("{\"benchmark\": \"" + mBenchmarkClass.getName() + "\", \"results\": [\n");
+            for (int i = 0; i < mResults.size(); i++) {
+                writer.write("  " + mResults.get(i) + (i < mResults.size() - 1 ? ",\n" : "\n"));
+            }
+            writer.write("]}\n");
+        } finally {
+            writer.close();
+        }
+    }
+}
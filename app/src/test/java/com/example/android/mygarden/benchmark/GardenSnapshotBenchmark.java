@@ -0,0 +1,162 @@
+package com.example.android.mygarden.benchmark;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.provider.GardenPages;
+import com.example.android.mygarden.provider.GardenSnapshot;
+import com.example.android.mygarden.provider.PlantContentProvider;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.provider.TestGardens;
+import com.example.android.mygarden.utils.PlantUtils;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Copying the garden cursor into a snapshot, and binding every row of the snapshot the way
+ * the garden list and the widget grid do
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class GardenSnapshotBenchmark {
+
+    static final int[] GARDEN_SIZES = {1000, 10000, 50000};
+
+    private static final BenchmarkReporter sReporter =
+            new BenchmarkReporter(GardenSnapshotBenchmark.class);
+
+    // Keeps the results alive so the binding is not optimized away
+    private static long sSink;
+
+    private PlantContentProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = TestGardens.setUpProvider();
+    }
+
+    @After
+    public void tearDown() {
+        TestGardens.tearDownProvider(mProvider);
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        sReporter.write();
+    }
+
+    @Test
+    public void fromCursor() throws Exception {
+        final ContentResolver resolver = RuntimeEnvironment.application.getContentResolver();
+        long timeNow = System.currentTimeMillis();
+        for (final int size : GARDEN_SIZES) {
+            TestGardens.clear(RuntimeEnvironment.application);
+            TestGardens.plant(size, timeNow, size);
+            sReporter.measure("fromCursor", size, size, new BenchmarkReporter.Task() {
+                private Cursor mCursor;
+
+                @Override
+                public void setUp() {
+                    // Fills the cursor window outside of the measure
+                    mCursor = resolver.query(PlantEntry.CONTENT_URI, GardenPages.PLANT_PROJECTION,
+                            null, null, GardenPages.SORT_ORDER);
+                    mCursor.getCount();
+                }
+
+                @Override
+                public void run() {
+                    try {
+                        sSink += GardenSnapshot.from(mCursor).getCount();
+                    } finally {
+                        mCursor.close();
+                    }
+                }
+            });
+        }
+    }
+
+    @Test
+    public void readByColumnName() throws Exception {
+        final ContentResolver resolver = RuntimeEnvironment.application.getContentResolver();
+        long timeNow = System.currentTimeMillis();
+        for (final int size : GARDEN_SIZES) {
+            TestGardens.clear(RuntimeEnvironment.application);
+            TestGardens.plant(size, timeNow, size);
+            sReporter.measure("readByColumnName", size, size, new BenchmarkReporter.Task() {
+                private Cursor mCursor;
+
+                @Override
+                public void setUp() {
+                    mCursor = resolver.query(PlantEntry.CONTENT_URI, GardenPages.PLANT_PROJECTION,
+                            null, null, GardenPages.SORT_ORDER);
+                    mCursor.getCount();
+                }
+
+                @Override
+                public void run() {
+                    // How the rows were read before GardenSnapshot, looking the columns up
+                    // by name for every row
+                    try {
+                        while (mCursor.moveToNext()) {
+                            sSink += mCursor.getLong(mCursor.getColumnIndex(PlantEntry._ID));
+                            sSink += mCursor.getInt(mCursor.getColumnIndex(PlantEntry.COLUMN_PLANT_TYPE));
+                            sSink += mCursor.getLong(mCursor.getColumnIndex(PlantEntry.COLUMN_CREATION_TIME));
+                            sSink += mCursor.getLong(mCursor.getColumnIndex(PlantEntry.COLUMN_LAST_WATERED_TIME));
+                        }
+                    } finally {
+                        mCursor.close();
+                    }
+                }
+            });
+        }
+    }
+
+    @Test
+    public void bind() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+        final long timeNow = System.currentTimeMillis();
+        for (final int size : GARDEN_SIZES) {
+            TestGardens.clear(context);
+            TestGardens.plant(size, timeNow, size);
+            final GardenSnapshot snapshot = GardenPages.queryPage(context.getContentResolver(), 0, size);
+            sReporter.measure("bind", size, size, new BenchmarkReporter.Task() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < snapshot.getCount(); i++) {
+                        sSink += snapshot.getPlantId(i);
+                        sSink += PlantUtils.getPlantImageRes(context,
+                                timeNow - snapshot.getCreatedAt(i),
+                                timeNow - snapshot.getWateredAt(i),
+                                snapshot.getPlantType(i));
+                    }
+                }
+            });
+        }
+    }
+}
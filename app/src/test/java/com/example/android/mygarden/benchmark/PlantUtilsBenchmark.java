@@ -0,0 +1,101 @@
+package com.example.android.mygarden.benchmark;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.app.Application;
+import android.content.Context;
+
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.utils.PlantUtils;
+import com.example.android.mygarden.utils.PlantUtils.PlantSize;
+import com.example.android.mygarden.utils.PlantUtils.PlantStatus;
+import com.example.android.mygarden.utils.TestPlantImages;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Resolution of the plant images, done for every plant bound in the app and the widgets
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class PlantUtilsBenchmark {
+
+    private static final int LOOKUPS = 10000;
+
+    private static final BenchmarkReporter sReporter = new BenchmarkReporter(PlantUtilsBenchmark.class);
+
+    // Keeps the results alive so the lookups are not optimized away
+    private static int sSink;
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        sReporter.write();
+    }
+
+    @Test
+    public void getPlantImgRes() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+        final int typeCount = PlantUtils.getPlantTypeCount(context);
+        final PlantStatus[] statuses = PlantStatus.values();
+        final PlantSize[] sizes = PlantSize.values();
+        sReporter.measure("getPlantImgRes", 0, LOOKUPS, new BenchmarkReporter.Task() {
+            @Override
+            public void run() {
+                for (int i = 0; i < LOOKUPS; i++) {
+                    sSink += PlantUtils.getPlantImgRes(context, i % typeCount,
+                            statuses[i % statuses.length], sizes[(i / statuses.length) % sizes.length]);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void getPlantImgResByName() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+        final int typeCount = PlantUtils.getPlantTypeCount(context);
+        final PlantStatus[] statuses = PlantStatus.values();
+        final PlantSize[] sizes = PlantSize.values();
+        sReporter.measure("getPlantImgResByName", 0, LOOKUPS, new BenchmarkReporter.Task() {
+            @Override
+            public void run() {
+                for (int i = 0; i < LOOKUPS; i++) {
+                    sSink += TestPlantImages.getPlantImgResByName(context, i % typeCount,
+                            statuses[i % statuses.length], sizes[(i / statuses.length) % sizes.length]);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void getPlantImageRes() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+        final long hour = 60 * 60 * 1000L;
+        sReporter.measure("getPlantImageRes", 0, LOOKUPS, new BenchmarkReporter.Task() {
+            @Override
+            public void run() {
+                for (int i = 0; i < LOOKUPS; i++) {
+                    sSink += PlantUtils.getPlantImageRes(context, (i % 72) * hour, (i % 14) * hour, i % 2);
+                }
+            }
+        });
+    }
+}
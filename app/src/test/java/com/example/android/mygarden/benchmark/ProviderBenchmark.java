@@ -0,0 +1,159 @@
+package com.example.android.mygarden.benchmark;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.provider.GardenPages;
+import com.example.android.mygarden.provider.GardenSnapshot;
+import com.example.android.mygarden.provider.PlantContentProvider;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.provider.TestGardens;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Inserts, waterings and queries through the plant provider at several garden sizes
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class ProviderBenchmark {
+
+    static final int[] GARDEN_SIZES = {100, 1000, 10000};
+
+    private static final int WRITES_PER_RUN = 100;
+    private static final int PAGE_SIZE = 64;
+
+    private static final BenchmarkReporter sReporter = new BenchmarkReporter(ProviderBenchmark.class);
+
+    private PlantContentProvider mProvider;
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mProvider = TestGardens.setUpProvider();
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        TestGardens.tearDownProvider(mProvider);
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        sReporter.write();
+    }
+
+    /**
+     * Replaces the garden with a generated one of the given size
+     */
+    private void plantGarden(int size, long timeNow) {
+        TestGardens.clear(RuntimeEnvironment.application);
+        TestGardens.plant(size, timeNow, size);
+    }
+
+    @Test
+    public void insert() throws Exception {
+        final long timeNow = System.currentTimeMillis();
+        for (final int size : GARDEN_SIZES) {
+            sReporter.measure("insert", size, WRITES_PER_RUN, new BenchmarkReporter.Task() {
+                @Override
+                public void setUp() {
+                    plantGarden(size, timeNow);
+                }
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < WRITES_PER_RUN; i++) {
+                        ContentValues values = new ContentValues(3);
+                        values.put(PlantEntry.COLUMN_PLANT_TYPE, i % 2);
+                        values.put(PlantEntry.COLUMN_CREATION_TIME, timeNow);
+                        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, timeNow);
+                        mResolver.insert(PlantEntry.CONTENT_URI, values);
+                    }
+                }
+            });
+        }
+    }
+
+    @Test
+    public void waterPlant() throws Exception {
+        final long timeNow = System.currentTimeMillis();
+        for (final int size : GARDEN_SIZES) {
+            plantGarden(size, timeNow);
+            final GardenSnapshot garden = GardenPages.queryPage(mResolver, 0, size);
+            sReporter.measure("waterPlant", size, WRITES_PER_RUN, new BenchmarkReporter.Task() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < WRITES_PER_RUN; i++) {
+                        long plantId = garden.getPlantId(i * garden.getCount() / WRITES_PER_RUN);
+                        mResolver.update(PlantEntry.buildWaterPlantUri(plantId), null, null, null);
+                    }
+                }
+            });
+        }
+    }
+
+    @Test
+    public void queryGarden() throws Exception {
+        final long timeNow = System.currentTimeMillis();
+        for (final int size : GARDEN_SIZES) {
+            plantGarden(size, timeNow);
+            sReporter.measure("queryGarden", size, 1, new BenchmarkReporter.Task() {
+                @Override
+                public void run() {
+                    readAll(mResolver.query(PlantEntry.CONTENT_URI, GardenPages.PLANT_PROJECTION,
+                            null, null, GardenPages.SORT_ORDER));
+                }
+            });
+            sReporter.measure("queryFirstPage", size, 1, new BenchmarkReporter.Task() {
+                @Override
+                public void run() {
+                    GardenPages.queryPage(mResolver, 0, PAGE_SIZE);
+                }
+            });
+            sReporter.measure("queryThirstiest", size, 1, new BenchmarkReporter.Task() {
+                @Override
+                public void run() {
+                    readAll(mResolver.query(PlantEntry.CONTENT_THIRSTIEST_URI, null, null, null, null));
+                }
+            });
+        }
+    }
+
+    private static void readAll(Cursor cursor) {
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
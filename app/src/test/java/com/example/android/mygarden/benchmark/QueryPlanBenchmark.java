@@ -0,0 +1,121 @@
+package com.example.android.mygarden.benchmark;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.app.Application;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.provider.PlantContentProvider;
+import com.example.android.mygarden.provider.PlantDbHelper;
+import com.example.android.mygarden.provider.PlantDbHelperTest;
+import com.example.android.mygarden.provider.TestGardens;
+import com.example.android.mygarden.utils.PlantUtils;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Plans and latencies of the garden queries with the version 2 indexes, and without them as
+ * in the version 1 schema
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class QueryPlanBenchmark {
+
+    private static final int[] GARDEN_SIZES = {10000, 100000};
+
+    private static final String[] QUERY_NAMES = {"gardenPage", "thirstiest", "aliveAndThirsty"};
+    private static final String[] QUERIES = {
+            "SELECT _id, plantType, createdAt, lastWateredAt FROM plants"
+                    + " WHERE deleted=0 ORDER BY createdAt, _id LIMIT 64",
+            "SELECT _id, plantType, createdAt, lastWateredAt FROM plants"
+                    + " WHERE deleted=0 ORDER BY lastWateredAt LIMIT 1",
+            "SELECT COUNT(*) FROM plants WHERE lastWateredAt>? AND lastWateredAt<? AND deleted=0"
+    };
+
+    private static final BenchmarkReporter sReporter = new BenchmarkReporter(QueryPlanBenchmark.class);
+
+    private PlantContentProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = TestGardens.setUpProvider();
+    }
+
+    @After
+    public void tearDown() {
+        TestGardens.tearDownProvider(mProvider);
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        sReporter.write();
+    }
+
+    @Test
+    public void queries() throws Exception {
+        long timeNow = System.currentTimeMillis();
+        String[][] args = {null, null, {
+                String.valueOf(timeNow - PlantUtils.MAX_AGE_WITHOUT_WATER),
+                String.valueOf(timeNow - PlantUtils.MIN_AGE_BETWEEN_WATER)}};
+        SQLiteDatabase db = PlantDbHelper.getInstance(RuntimeEnvironment.application).getWritableDatabase();
+        for (int size : GARDEN_SIZES) {
+            TestGardens.plant(size, timeNow, size);
+            db.execSQL("ANALYZE");
+            measureQueries(db, args, size, "");
+            // The version 1 schema had no index
+            db.execSQL("DROP INDEX plants_created_at_idx");
+            db.execSQL("DROP INDEX plants_last_watered_at_idx");
+            measureQueries(db, args, size, "NoIndex");
+            // Start the next size from a new database with the current schema
+            TestGardens.tearDownProvider(mProvider);
+            mProvider = TestGardens.setUpProvider();
+            db = PlantDbHelper.getInstance(RuntimeEnvironment.application).getWritableDatabase();
+        }
+    }
+
+    private void measureQueries(final SQLiteDatabase db, String[][] args, int size, String suffix)
+            throws Exception {
+        for (int i = 0; i < QUERIES.length; i++) {
+            final String sql = QUERIES[i];
+            final String[] queryArgs = args[i];
+            String name = QUERY_NAMES[i] + suffix;
+            sReporter.report(name, size, "queryPlan", PlantDbHelperTest.explainQueryPlan(db, sql, queryArgs));
+            sReporter.measure(name, size, 1, new BenchmarkReporter.Task() {
+                @Override
+                public void run() {
+                    Cursor cursor = db.rawQuery(sql, queryArgs);
+                    try {
+                        while (cursor.moveToNext()) {
+                            cursor.getLong(0);
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.android.mygarden.benchmark;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+import android.app.Application;
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.provider.GardenPages;
+import com.example.android.mygarden.provider.GardenSnapshot;
+import com.example.android.mygarden.provider.PlantContentProvider;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.provider.PlantDbHelper;
+import com.example.android.mygarden.provider.TestGardens;
+import com.example.android.mygarden.utils.PlantUtils;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+/**
+ * Compares the provider's compiled write statements with SQLiteDatabase.insert and update
+ * taking ContentValues, each batch of writes in a single transaction
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class WriteBenchmark {
+
+    private static final int[] OPERATION_COUNTS = {1000, 10000};
+
+    private static final String WATER_SELECTION = PlantEntry._ID + "=? AND "
+            + PlantEntry.COLUMN_LAST_WATERED_TIME + ">? AND " + PlantEntry.COLUMN_DELETED + "=0";
+
+    private static final BenchmarkReporter sReporter = new BenchmarkReporter(WriteBenchmark.class);
+
+    private PlantContentProvider mProvider;
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mProvider = TestGardens.setUpProvider();
+        mDb = PlantDbHelper.getInstance(RuntimeEnvironment.application).getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        TestGardens.tearDownProvider(mProvider);
+    }
+
+    @AfterClass
+    public static void writeResults() throws Exception {
+        sReporter.write();
+    }
+
+    private static ContentValues[] plantValues(int count, long timeNow) {
+        ContentValues[] values = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = new ContentValues(3);
+            values[i].put(PlantEntry.COLUMN_PLANT_TYPE, i % 2);
+            values[i].put(PlantEntry.COLUMN_CREATION_TIME, timeNow);
+            values[i].put(PlantEntry.COLUMN_LAST_WATERED_TIME, timeNow);
+        }
+        return values;
+    }
+
+    @Test
+    public void insert() throws Exception {
+        final long timeNow = System.currentTimeMillis();
+        for (final int count : OPERATION_COUNTS) {
+            final ContentValues[] values = plantValues(count, timeNow);
+            sReporter.measure("insertCompiled", count, count, new BenchmarkReporter.Task() {
+                @Override
+                public void setUp() {
+                    TestGardens.clear(RuntimeEnvironment.application);
+                }
+
+                @Override
+                public void run() {
+                    mProvider.bulkInsert(PlantEntry.CONTENT_URI, values);
+                }
+            });
+            sReporter.measure("insertContentValues", count, count, new BenchmarkReporter.Task() {
+                @Override
+                public void setUp() {
+                    TestGardens.clear(RuntimeEnvironment.application);
+                }
+
+                @Override
+                public void run() {
+                    mDb.beginTransaction();
+                    try {
+                        for (ContentValues value : values) {
+                            mDb.insert(PlantEntry.TABLE_NAME, null, value);
+                        }
+                        mDb.setTransactionSuccessful();
+                    } finally {
+                        mDb.endTransaction();
+                    }
+                }
+            });
+        }
+    }
+
+    @Test
+    public void waterPlant() throws Exception {
+        final long timeNow = System.currentTimeMillis();
+        for (final int count : OPERATION_COUNTS) {
+            TestGardens.clear(RuntimeEnvironment.application);
+            mProvider.bulkInsert(PlantEntry.CONTENT_URI, plantValues(count, timeNow));
+            final GardenSnapshot garden = GardenPages.queryPage(
+                    RuntimeEnvironment.application.getContentResolver(), 0, count);
+            sReporter.measure("waterPlantCompiled", count, count, new BenchmarkReporter.Task() {
+                @Override
+                public void run() throws Exception {
+                    ArrayList<ContentProviderOperation> operations = new ArrayList<>(count);
+                    for (int i = 0; i < garden.getCount(); i++) {
+                        operations.add(ContentProviderOperation.newUpdate(
+                                PlantEntry.buildWaterPlantUri(garden.getPlantId(i))).build());
+                    }
+                    mProvider.applyBatch(operations);
+                }
+            });
+            sReporter.measure("waterPlantContentValues", count, count, new BenchmarkReporter.Task() {
+                @Override
+                public void run() {
+                    long wateredAt = System.currentTimeMillis();
+                    String deadBefore = String.valueOf(wateredAt - PlantUtils.MAX_AGE_WITHOUT_WATER);
+                    mDb.beginTransaction();
+                    try {
+                        for (int i = 0; i < garden.getCount(); i++) {
+                            ContentValues values = new ContentValues(1);
+                            values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, wateredAt);
+                            mDb.update(PlantEntry.TABLE_NAME, values, WATER_SELECTION,
+                                    new String[]{String.valueOf(garden.getPlantId(i)), deadBefore});
+                        }
+                        mDb.setTransactionSuccessful();
+                    } finally {
+                        mDb.endTransaction();
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+import android.app.Application;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class GardenCompactorTest {
+
+    private static final int GARDEN_SIZE = 3000;
+
+    private PlantContentProvider mProvider;
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mProvider = TestGardens.setUpProvider();
+        mDb = PlantDbHelper.getInstance(RuntimeEnvironment.application).getWritableDatabase();
+        TestGardens.plant(GARDEN_SIZE, System.currentTimeMillis(), 1);
+    }
+
+    @After
+    public void tearDown() {
+        TestGardens.tearDownProvider(mProvider);
+    }
+
+    private long count(String selection) {
+        return DatabaseUtils.queryNumEntries(mDb, PlantEntry.TABLE_NAME, selection);
+    }
+
+    @Test
+    public void compactRemovesAllCutPlants() {
+        // Scattered cut plants, and a run of them longer than a batch
+        mDb.execSQL("UPDATE " + PlantEntry.TABLE_NAME + " SET " + PlantEntry.COLUMN_DELETED
+                + "=1 WHERE " + PlantEntry._ID + "%3=0 OR " + PlantEntry._ID + " BETWEEN 1000 AND 2199");
+        long cut = count(PlantEntry.COLUMN_DELETED + "=1");
+        assertTrue(cut > 1000);
+
+        assertEquals(cut, GardenCompactor.compact(RuntimeEnvironment.application));
+        assertEquals(0, count(PlantEntry.COLUMN_DELETED + "=1"));
+        assertEquals(GARDEN_SIZE - cut, count(null));
+        assertEquals(0, GardenCompactor.compact(RuntimeEnvironment.application));
+    }
+
+    @Test
+    public void compactWithoutCutPlants() {
+        assertEquals(0, GardenCompactor.compact(RuntimeEnvironment.application));
+        assertEquals(GARDEN_SIZE, count(null));
+    }
+
+    @Test
+    public void batchesStartAfterThePreviousOne() {
+        String plan = PlantDbHelperTest.explainQueryPlan(mDb, GardenCompactor.SQL_NEXT_BATCH_END,
+                new String[]{"0"});
+        // A range search on the rowid, not a scan of the rows before the batch
+        assertTrue(plan, plan.contains("INTEGER PRIMARY KEY (rowid>?)"));
+        assertFalse(plan, plan.contains("SCAN TABLE " + PlantEntry.TABLE_NAME));
+    }
+}
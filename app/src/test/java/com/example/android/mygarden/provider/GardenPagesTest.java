@@ -0,0 +1,219 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class GardenPagesTest {
+
+    private static final int LARGE_GARDEN_SIZE = 200000;
+    // Plants planted at the same time, so that pages also break between equal creation times
+    private static final int PLANTS_PER_CREATION_TIME = 7;
+    private static final int PAGE_SIZE = 64;
+
+    private PlantContentProvider mProvider;
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mProvider = TestGardens.setUpProvider();
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        TestGardens.tearDownProvider(mProvider);
+    }
+
+    /**
+     * Plants the garden in a random order, so that Ids do not follow the creation times
+     */
+    private void plantShuffledGarden(int count) {
+        Random random = new Random(count);
+        int[] creationOrder = new int[count];
+        for (int i = 0; i < count; i++) creationOrder[i] = i;
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = creationOrder[i];
+            creationOrder[i] = creationOrder[j];
+            creationOrder[j] = swap;
+        }
+        ContentValues[] batch = new ContentValues[1000];
+        for (int start = 0; start < count; start += batch.length) {
+            int size = Math.min(batch.length, count - start);
+            if (size != batch.length) batch = new ContentValues[size];
+            for (int i = 0; i < size; i++) {
+                ContentValues values = new ContentValues(3);
+                long createdAt = 1000 + creationOrder[start + i] / PLANTS_PER_CREATION_TIME;
+                values.put(PlantEntry.COLUMN_PLANT_TYPE, i % 2);
+                values.put(PlantEntry.COLUMN_CREATION_TIME, createdAt);
+                values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, createdAt);
+                batch[i] = values;
+            }
+            assertEquals(size, mResolver.bulkInsert(PlantEntry.CONTENT_URI, batch));
+        }
+    }
+
+    @Test
+    public void selectionArgsAfter() {
+        assertArrayEquals(new String[]{"1500", "42"}, GardenPages.selectionArgsAfter(1500, 42));
+    }
+
+    @Test
+    public void queryPageAfter_searchesTheIndexFromTheKey() {
+        SQLiteDatabase db = PlantDbHelper.getInstance(RuntimeEnvironment.application)
+                .getReadableDatabase();
+        // The query the provider runs for queryPageAfter
+        String plan = PlantDbHelperTest.explainQueryPlan(db, "SELECT _id, plantType, createdAt,"
+                        + " lastWateredAt FROM plants WHERE deleted=0 AND ("
+                        + GardenPages.SELECTION_AFTER_KEY + ") ORDER BY " + GardenPages.SORT_ORDER
+                        + " LIMIT " + PAGE_SIZE,
+                GardenPages.selectionArgsAfter(1500, 42));
+        assertTrue(plan, plan.contains("SEARCH"));
+        assertTrue(plan, plan.contains("plants_created_at_idx (createdAt>?)"));
+        assertFalse(plan, plan.contains("SCAN"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void queryRange_searchesTheIndexBetweenTheKeys() {
+        SQLiteDatabase db = PlantDbHelper.getInstance(RuntimeEnvironment.application)
+                .getReadableDatabase();
+        // The query the provider runs for queryRange
+        String plan = PlantDbHelperTest.explainQueryPlan(db, "SELECT _id, plantType, createdAt,"
+                        + " lastWateredAt FROM plants WHERE deleted=0 AND ("
+                        + GardenPages.SELECTION_BETWEEN_KEYS + ") ORDER BY " + GardenPages.SORT_ORDER,
+                GardenPages.selectionArgsBetween(1500, 42, 1600, 7));
+        assertTrue(plan, plan.contains("SEARCH"));
+        assertTrue(plan, plan.contains("plants_created_at_idx (createdAt>? AND createdAt<?)"));
+        assertFalse(plan, plan.contains("SCAN"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void queryRange_followsInsertsAndDeletes() {
+        plantShuffledGarden(1000);
+        GardenSnapshot garden = GardenPages.queryPage(mResolver, 0, 3 * PAGE_SIZE);
+        int first = PAGE_SIZE - 1;
+        int last = 2 * PAGE_SIZE - 1;
+        GardenSnapshot range = GardenPages.queryRange(mResolver,
+                garden.getCreatedAt(first), garden.getPlantId(first),
+                garden.getCreatedAt(last), garden.getPlantId(last));
+        assertEquals(PAGE_SIZE, range.getCount());
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            assertEquals(garden.getPlantId(PAGE_SIZE + i), range.getPlantId(i));
+        }
+
+        // A plant planted within the range grows it rather than pushing out its last plant
+        ContentValues values = new ContentValues(3);
+        values.put(PlantEntry.COLUMN_PLANT_TYPE, 0);
+        values.put(PlantEntry.COLUMN_CREATION_TIME, garden.getCreatedAt(PAGE_SIZE + 10));
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, garden.getCreatedAt(PAGE_SIZE + 10));
+        mResolver.insert(PlantEntry.CONTENT_URI, values);
+        // The last plant of the range may go, the range still ends at its key
+        mResolver.delete(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, garden.getPlantId(last)), null, null);
+        range = GardenPages.queryRange(mResolver,
+                garden.getCreatedAt(first), garden.getPlantId(first),
+                garden.getCreatedAt(last), garden.getPlantId(last));
+        assertEquals(PAGE_SIZE, range.getCount());
+        assertEquals(garden.getPlantId(PAGE_SIZE), range.getPlantId(0));
+        assertEquals(garden.getPlantId(last - 1), range.getPlantId(PAGE_SIZE - 1));
+    }
+
+    @Test
+    public void queryRange_fromTheStart() {
+        plantShuffledGarden(500);
+        GardenSnapshot firstPage = GardenPages.queryPage(mResolver, 0, PAGE_SIZE);
+        int last = PAGE_SIZE - 1;
+        GardenSnapshot range = GardenPages.queryRange(mResolver, 0, PlantContract.INVALID_PLANT_ID,
+                firstPage.getCreatedAt(last), firstPage.getPlantId(last));
+        assertEquals(PAGE_SIZE, range.getCount());
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            assertEquals(firstPage.getPlantId(i), range.getPlantId(i));
+        }
+    }
+
+    @Test
+    public void queryPageAfter_matchesQueryPage() {
+        plantShuffledGarden(1000);
+        GardenSnapshot firstPages = GardenPages.queryPage(mResolver, 0, 3 * PAGE_SIZE);
+        GardenSnapshot firstPage = GardenPages.queryPage(mResolver, 0, PAGE_SIZE);
+        int last = PAGE_SIZE - 1;
+        GardenSnapshot secondPage = GardenPages.queryPageAfter(mResolver,
+                firstPage.getCreatedAt(last), firstPage.getPlantId(last), PAGE_SIZE);
+        GardenSnapshot expected = firstPages.slice(PAGE_SIZE, 2 * PAGE_SIZE);
+        assertEquals(PAGE_SIZE, secondPage.getCount());
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            assertEquals(expected.getPlantId(i), secondPage.getPlantId(i));
+            assertTrue(expected.contentsEqual(i, secondPage, i));
+        }
+        assertEquals(secondPage.getPlantId(0),
+                GardenPages.queryPage(mResolver, PAGE_SIZE, PAGE_SIZE).getPlantId(0));
+    }
+
+    @Test
+    public void queryPageAfter_pagesThroughLargeGarden() {
+        plantShuffledGarden(LARGE_GARDEN_SIZE);
+        assertEquals(LARGE_GARDEN_SIZE, GardenPages.queryCount(mResolver));
+
+        boolean[] seen = new boolean[LARGE_GARDEN_SIZE + 1];
+        int total = 0;
+        long lastCreatedAt = Long.MIN_VALUE;
+        long lastPlantId = Long.MIN_VALUE;
+        GardenSnapshot page = GardenPages.queryPage(mResolver, 0, PAGE_SIZE);
+        while (page.getCount() > 0) {
+            for (int i = 0; i < page.getCount(); i++) {
+                long createdAt = page.getCreatedAt(i);
+                long plantId = page.getPlantId(i);
+                // Strictly increasing (creation time, Id), so no plant is skipped or repeated
+                assertTrue(createdAt > lastCreatedAt
+                        || (createdAt == lastCreatedAt && plantId > lastPlantId));
+                assertTrue(!seen[(int) plantId]);
+                seen[(int) plantId] = true;
+                lastCreatedAt = createdAt;
+                lastPlantId = plantId;
+            }
+            total += page.getCount();
+            page = GardenPages.queryPageAfter(mResolver, lastCreatedAt, lastPlantId, PAGE_SIZE);
+        }
+        assertEquals(LARGE_GARDEN_SIZE, total);
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+import android.app.Application;
+import android.content.ContentUris;
+import android.content.Context;
+
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class GardenSnapshotFileTest {
+
+    // Header fields, as ints
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int PLANT_COUNT_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private PlantContentProvider mProvider;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mProvider = TestGardens.setUpProvider();
+        mFile = new File(mFolder.getRoot(), "garden_snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        TestGardens.tearDownProvider(mProvider);
+    }
+
+    private void assertSameGarden(GardenSnapshot expected, GardenSnapshot actual) {
+        assertEquals(expected.getCount(), actual.getCount());
+        for (int i = 0; i < expected.getCount(); i++) {
+            assertEquals(expected.getPlantId(i), actual.getPlantId(i));
+            assertTrue(expected.contentsEqual(i, actual, i));
+        }
+    }
+
+    private void writeInt(long offset, int value) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(offset);
+            file.writeInt(value);
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        GardenSnapshot garden = GardenSnapshotTest.garden(1, 100);
+        GardenSnapshotFile.write(mFile, garden, 1000);
+        GardenSnapshotFile saved = GardenSnapshotFile.read(mFile);
+        assertNotNull(saved);
+        assertEquals(1000, saved.getPlantCount());
+        assertSameGarden(garden, saved.getSnapshot());
+        assertTrue(saved.holds(garden, 1000));
+    }
+
+    @Test
+    public void onlyTheFirstPlantsAreSaved() throws IOException {
+        GardenSnapshot garden = GardenSnapshotTest.garden(1, GardenSnapshotFile.MAX_PLANTS + 10);
+        GardenSnapshotFile.write(mFile, garden, garden.getCount());
+        GardenSnapshotFile saved = GardenSnapshotFile.read(mFile);
+        assertEquals(garden.getCount(), saved.getPlantCount());
+        assertSameGarden(garden.slice(0, GardenSnapshotFile.MAX_PLANTS), saved.getSnapshot());
+        assertTrue(saved.holds(garden, garden.getCount()));
+    }
+
+    @Test
+    public void emptyGarden() throws IOException {
+        GardenSnapshotFile.write(mFile, GardenSnapshot.EMPTY, 0);
+        GardenSnapshotFile saved = GardenSnapshotFile.read(mFile);
+        assertEquals(0, saved.getPlantCount());
+        assertEquals(0, saved.getSnapshot().getCount());
+    }
+
+    @Test
+    public void rejectsBadHeaders() throws IOException {
+        assertNull(GardenSnapshotFile.read(mFile));
+        GardenSnapshot garden = GardenSnapshotTest.garden(1, 10);
+
+        GardenSnapshotFile.write(mFile, garden, 10);
+        writeInt(MAGIC_OFFSET, 0);
+        assertNull(GardenSnapshotFile.read(mFile));
+
+        GardenSnapshotFile.write(mFile, garden, 10);
+        writeInt(VERSION_OFFSET, 2);
+        assertNull(GardenSnapshotFile.read(mFile));
+
+        // More saved plants than in the garden
+        GardenSnapshotFile.write(mFile, garden, 10);
+        writeInt(PLANT_COUNT_OFFSET, 9);
+        assertNull(GardenSnapshotFile.read(mFile));
+
+        // Saved plants not matching the file size
+        GardenSnapshotFile.write(mFile, garden, 10);
+        writeInt(COUNT_OFFSET, 9);
+        assertNull(GardenSnapshotFile.read(mFile));
+        GardenSnapshotFile.write(mFile, garden, 10);
+        writeInt(COUNT_OFFSET, -1);
+        assertNull(GardenSnapshotFile.read(mFile));
+    }
+
+    @Test
+    public void rejectsTruncatedFiles() throws IOException {
+        GardenSnapshotFile.write(mFile, GardenSnapshotTest.garden(1, 10), 10);
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(file.length() - 1);
+        } finally {
+            file.close();
+        }
+        assertNull(GardenSnapshotFile.read(mFile));
+        file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(3);
+        } finally {
+            file.close();
+        }
+        assertNull(GardenSnapshotFile.read(mFile));
+    }
+
+    @Test
+    public void holdsComparesTheSavedPlants() throws IOException {
+        GardenSnapshot garden = GardenSnapshotTest.garden(1, 10);
+        GardenSnapshotFile.write(mFile, garden, 10);
+        GardenSnapshotFile saved = GardenSnapshotFile.read(mFile);
+        assertFalse(saved.holds(garden, 11));
+        assertFalse(saved.holds(garden.slice(0, 9), 10));
+        assertFalse(saved.holds(GardenSnapshotTest.garden(2, 10), 10));
+        assertTrue(saved.holds(GardenSnapshotTest.garden(1, 10), 10));
+    }
+
+    @Test
+    public void concurrentWritersNeverCorruptTheFile() throws Exception {
+        final int writerCount = 4;
+        final int writesPerWriter = 50;
+        final GardenSnapshot[] gardens = new GardenSnapshot[writerCount];
+        for (int i = 0; i < writerCount; i++) {
+            // Different sizes, so that a mix of two writes shows in the header
+            gardens[i] = GardenSnapshotTest.garden(1000 * i, 10 + 50 * i);
+        }
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < writerCount; i++) {
+            final GardenSnapshot garden = gardens[i];
+            writers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < writesPerWriter; j++) {
+                            GardenSnapshotFile.write(mFile, garden, garden.getCount());
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (writing.get()) {
+                    GardenSnapshotFile saved = GardenSnapshotFile.read(mFile);
+                    if (saved != null && !holdsOneOf(saved, gardens)) {
+                        failure.compareAndSet(null, new AssertionError("Mixed up snapshot"));
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (Thread writer : writers) writer.start();
+        for (Thread writer : writers) writer.join();
+        writing.set(false);
+        reader.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+
+        assertTrue(holdsOneOf(GardenSnapshotFile.read(mFile), gardens));
+        // Only the snapshot is left, no temporary file
+        assertArrayEquals(new String[]{mFile.getName()}, mFolder.getRoot().list());
+    }
+
+    private static boolean holdsOneOf(GardenSnapshotFile saved, GardenSnapshot[] gardens) {
+        for (GardenSnapshot garden : gardens) {
+            if (saved.holds(garden, garden.getCount())) return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void concurrentUpdatesSaveTheLatestGarden() throws Exception {
+        final Context context = RuntimeEnvironment.application;
+        TestGardens.plant(100, System.currentTimeMillis(), 1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> updaters = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            updaters.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 10; j++) GardenSnapshotFile.update(context);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+        for (Thread updater : updaters) updater.start();
+        for (Thread updater : updaters) updater.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        GardenSnapshot garden = GardenPages.queryPage(context.getContentResolver(), 0,
+                GardenSnapshotFile.MAX_PLANTS);
+        assertTrue(GardenSnapshotFile.read(context).holds(garden, 100));
+    }
+
+    @Test
+    public void updateOnlyRewritesChangedGardens() {
+        Context context = RuntimeEnvironment.application;
+        TestGardens.plant(300, System.currentTimeMillis(), 1);
+        assertTrue(GardenSnapshotFile.update(context));
+        assertFalse(GardenSnapshotFile.update(context));
+        assertEquals(300, GardenSnapshotFile.read(context).getPlantCount());
+
+        GardenSnapshot first = GardenPages.queryPage(context.getContentResolver(), 0, 1);
+        mProvider.delete(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, first.getPlantId(0)),
+                null, null);
+        assertTrue(GardenSnapshotFile.update(context));
+        assertFalse(GardenSnapshotFile.update(context));
+        assertEquals(299, GardenSnapshotFile.read(context).getPlantCount());
+    }
+}
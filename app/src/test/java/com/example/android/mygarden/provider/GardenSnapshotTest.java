@@ -0,0 +1,126 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GardenSnapshotTest {
+
+    /**
+     * Returns a snapshot of plants with Ids from firstId, planted and watered at times
+     * derived from their Ids
+     */
+    static GardenSnapshot garden(long firstId, int count) {
+        long[] ids = new long[count];
+        int[] types = new int[count];
+        long[] createdAt = new long[count];
+        long[] wateredAt = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = firstId + i;
+            types[i] = (int) (ids[i] % 2);
+            createdAt[i] = ids[i] * 1000;
+            wateredAt[i] = ids[i] * 1000 + 500;
+        }
+        return new GardenSnapshot(ids, types, createdAt, wateredAt);
+    }
+
+    @Test
+    public void slice() {
+        GardenSnapshot snapshot = garden(1, 10);
+        GardenSnapshot slice = snapshot.slice(2, 5);
+        assertEquals(3, slice.getCount());
+        for (int i = 0; i < slice.getCount(); i++) {
+            assertEquals(snapshot.getPlantId(i + 2), slice.getPlantId(i));
+            assertEquals(snapshot.getPlantType(i + 2), slice.getPlantType(i));
+            assertEquals(snapshot.getCreatedAt(i + 2), slice.getCreatedAt(i));
+            assertEquals(snapshot.getWateredAt(i + 2), slice.getWateredAt(i));
+        }
+        assertEquals(0, snapshot.slice(4, 4).getCount());
+    }
+
+    @Test
+    public void slice_wholeSnapshot() {
+        GardenSnapshot snapshot = garden(1, 10);
+        assertSame(snapshot, snapshot.slice(0, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void slice_invalidRange() {
+        garden(1, 10).slice(5, 2);
+    }
+
+    @Test
+    public void concat() {
+        GardenSnapshot first = garden(1, 3);
+        GardenSnapshot second = garden(10, 2);
+        GardenSnapshot snapshot = GardenSnapshot.concat(first, second);
+        assertEquals(5, snapshot.getCount());
+        assertEquals(1, snapshot.getPlantId(0));
+        assertEquals(3, snapshot.getPlantId(2));
+        assertEquals(10, snapshot.getPlantId(3));
+        assertEquals(11000, snapshot.getCreatedAt(4));
+        assertSame(first, GardenSnapshot.concat(first, GardenSnapshot.EMPTY));
+        assertSame(second, GardenSnapshot.concat(GardenSnapshot.EMPTY, second));
+    }
+
+    @Test
+    public void indexAfter() {
+        // Two plants per creation time, Ids not following it
+        GardenSnapshot snapshot = new GardenSnapshot(new long[]{5, 9, 2, 7}, new int[4],
+                new long[]{1000, 1000, 2000, 2000}, new long[4]);
+        assertEquals(0, snapshot.indexAfter(999, 100));
+        assertEquals(0, snapshot.indexAfter(1000, 4));
+        assertEquals(1, snapshot.indexAfter(1000, 5));
+        assertEquals(2, snapshot.indexAfter(1000, 9));
+        // Keys of plants which are not displayed
+        assertEquals(2, snapshot.indexAfter(1500, 1));
+        assertEquals(3, snapshot.indexAfter(2000, 3));
+        assertEquals(4, snapshot.indexAfter(2000, 7));
+        assertEquals(0, GardenSnapshot.EMPTY.indexAfter(1000, 1));
+    }
+
+    @Test
+    public void contentsEqual() {
+        GardenSnapshot snapshot = garden(1, 5);
+        GardenSnapshot shifted = garden(3, 5);
+        assertTrue(snapshot.contentsEqual(2, shifted, 0));
+        assertTrue(snapshot.contentsEqual(4, shifted, 2));
+        assertFalse(snapshot.contentsEqual(0, shifted, 0));
+    }
+
+    @Test
+    public void contentsEqual_comparesEveryColumn() {
+        GardenSnapshot snapshot = garden(1, 1);
+        GardenSnapshot otherType = new GardenSnapshot(new long[]{1}, new int[]{0},
+                new long[]{1000}, new long[]{1500});
+        GardenSnapshot otherCreatedAt = new GardenSnapshot(new long[]{1}, new int[]{1},
+                new long[]{999}, new long[]{1500});
+        GardenSnapshot otherWateredAt = new GardenSnapshot(new long[]{1}, new int[]{1},
+                new long[]{1000}, new long[]{1501});
+        GardenSnapshot same = new GardenSnapshot(new long[]{1}, new int[]{1},
+                new long[]{1000}, new long[]{1500});
+        assertFalse(snapshot.contentsEqual(0, otherType, 0));
+        assertFalse(snapshot.contentsEqual(0, otherCreatedAt, 0));
+        assertFalse(snapshot.contentsEqual(0, otherWateredAt, 0));
+        assertTrue(snapshot.contentsEqual(0, same, 0));
+    }
+}
@@ -0,0 +1,312 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.utils.PlantUtils;
+import com.example.android.mygarden.utils.PlantUtils.PlantSize;
+import com.example.android.mygarden.utils.PlantUtils.PlantStatus;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the engine's binary searches over its sorted arrays against a plain scan of the
+ * plants in the provider
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class GardenStateEngineTest {
+
+    private static final long TIME_NOW = 1500000000000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long TIMEOUT_MILLIS = 10 * 1000;
+
+    private PlantContentProvider mProvider;
+    private ContentResolver mResolver;
+    private GardenStateEngine mEngine;
+
+    @Before
+    public void setUp() {
+        mProvider = TestGardens.setUpProvider();
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        if (mEngine != null) mEngine.shutdown();
+        TestGardens.tearDownProvider(mProvider);
+    }
+
+    private void startEngine() throws InterruptedException {
+        mEngine = new GardenStateEngine(RuntimeEnvironment.application);
+        assertTrue(mEngine.awaitLoaded(TIMEOUT_MILLIS));
+    }
+
+    private long insertPlant(long createdAt, long wateredAt) {
+        ContentValues values = new ContentValues(3);
+        values.put(PlantEntry.COLUMN_PLANT_TYPE, 0);
+        values.put(PlantEntry.COLUMN_CREATION_TIME, createdAt);
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, wateredAt);
+        return ContentUris.parseId(mResolver.insert(PlantEntry.CONTENT_URI, values));
+    }
+
+    /**
+     * Plants with timestamps on both sides of, and right at, every threshold
+     */
+    private void plantEdgeCases() {
+        long[] ages = {0, 1, PlantUtils.MIN_AGE_BETWEEN_WATER, PlantUtils.DANGER_AGE_WITHOUT_WATER,
+                PlantUtils.MAX_AGE_WITHOUT_WATER, PlantUtils.JUVENILE_AGE, PlantUtils.FULLY_GROWN_AGE};
+        for (long age : ages) {
+            for (long delta = -1; delta <= 1; delta++) {
+                long time = TIME_NOW - age + delta;
+                insertPlant(time, time);
+                insertPlant(TIME_NOW - 3 * PlantUtils.FULLY_GROWN_AGE, time);
+            }
+        }
+    }
+
+    /**
+     * The plants in the provider, as {id, createdAt, wateredAt}
+     */
+    private List<long[]> queryPlants() {
+        Cursor cursor = mResolver.query(PlantEntry.CONTENT_URI, new String[]{PlantEntry._ID,
+                PlantEntry.COLUMN_CREATION_TIME, PlantEntry.COLUMN_LAST_WATERED_TIME}, null, null, null);
+        List<long[]> plants = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                plants.add(new long[]{cursor.getLong(0), cursor.getLong(1), cursor.getLong(2)});
+            }
+        } finally {
+            cursor.close();
+        }
+        return plants;
+    }
+
+    private static PlantStatus getStatus(long[] plant, long timeNow) {
+        long waterAge = timeNow - plant[2];
+        if (waterAge > PlantUtils.MAX_AGE_WITHOUT_WATER) return PlantStatus.DEAD;
+        if (waterAge > PlantUtils.DANGER_AGE_WITHOUT_WATER) return PlantStatus.DYING;
+        return PlantStatus.ALIVE;
+    }
+
+    private static int[] expectedStatusCounts(List<long[]> plants, long timeNow) {
+        int[] counts = new int[PlantStatus.values().length];
+        for (long[] plant : plants) counts[getStatus(plant, timeNow).ordinal()]++;
+        return counts;
+    }
+
+    private static int[] expectedSizeCounts(List<long[]> plants, long timeNow) {
+        int[] counts = new int[PlantSize.values().length];
+        for (long[] plant : plants) {
+            long plantAge = timeNow - plant[1];
+            if (plantAge > PlantUtils.FULLY_GROWN_AGE) counts[PlantSize.FULLY_GROWN.ordinal()]++;
+            else if (plantAge > PlantUtils.JUVENILE_AGE) counts[PlantSize.JUVENILE.ordinal()]++;
+            else if (plantAge > PlantUtils.TINY_AGE) counts[PlantSize.TINY.ordinal()]++;
+        }
+        return counts;
+    }
+
+    private static long[] expectedDyingPlantIds(List<long[]> plants, long timeNow) {
+        List<long[]> dying = new ArrayList<>();
+        for (long[] plant : plants) {
+            if (getStatus(plant, timeNow) == PlantStatus.DYING) dying.add(plant);
+        }
+        Collections.sort(dying, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return a[2] < b[2] ? -1 : (a[2] == b[2] ? 0 : 1);
+            }
+        });
+        long[] ids = new long[dying.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = dying.get(i)[0];
+        return ids;
+    }
+
+    private static long expectedNextTransitionTime(List<long[]> plants, long timeNow) {
+        long[] waterAges = {PlantUtils.MIN_AGE_BETWEEN_WATER, PlantUtils.DANGER_AGE_WITHOUT_WATER,
+                PlantUtils.MAX_AGE_WITHOUT_WATER};
+        long[] plantAges = {PlantUtils.TINY_AGE, PlantUtils.JUVENILE_AGE, PlantUtils.FULLY_GROWN_AGE};
+        long next = Long.MAX_VALUE;
+        for (long[] plant : plants) {
+            for (long age : waterAges) {
+                if (plant[2] >= timeNow - age) next = Math.min(next, plant[2] + age + 1);
+            }
+            for (long age : plantAges) {
+                if (plant[1] >= timeNow - age) next = Math.min(next, plant[1] + age + 1);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Asserts that every lookup of the engine matches a scan of the provider's plants
+     */
+    private void assertMatchesProvider(long timeNow) {
+        List<long[]> plants = queryPlants();
+        assertEquals(plants.size(), mEngine.getPlantCount());
+        assertArrayEquals(expectedStatusCounts(plants, timeNow), mEngine.getStatusCounts(timeNow));
+        assertArrayEquals(expectedSizeCounts(plants, timeNow), mEngine.getSizeCounts(timeNow));
+        long[] dyingIds = mEngine.getDyingPlantIds(timeNow);
+        long[] expectedDyingIds = expectedDyingPlantIds(plants, timeNow);
+        // Plants watered at the same time may come in any order
+        Arrays.sort(dyingIds);
+        Arrays.sort(expectedDyingIds);
+        assertArrayEquals(expectedDyingIds, dyingIds);
+        assertEquals(expectedNextTransitionTime(plants, timeNow), mEngine.getNextTransitionTime(timeNow));
+    }
+
+    /**
+     * Waits for the engine to apply the change notifications, which it does on its own thread
+     */
+    private void awaitMatchesProvider(long timeNow) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                assertMatchesProvider(timeNow);
+                return;
+            } catch (AssertionError e) {
+                if (System.currentTimeMillis() > deadline) throw e;
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test
+    public void emptyGarden() throws InterruptedException {
+        startEngine();
+        assertEquals(0, mEngine.getPlantCount());
+        assertArrayEquals(new int[3], mEngine.getStatusCounts(TIME_NOW));
+        assertArrayEquals(new int[3], mEngine.getSizeCounts(TIME_NOW));
+        assertEquals(0, mEngine.getDyingPlantIds(TIME_NOW).length);
+        assertEquals(Long.MAX_VALUE, mEngine.getNextTransitionTime(TIME_NOW));
+    }
+
+    @Test
+    public void lookupsAtTheThresholds() throws InterruptedException {
+        plantEdgeCases();
+        startEngine();
+        for (long delta = -2; delta <= 2; delta++) {
+            assertMatchesProvider(TIME_NOW + delta);
+        }
+        assertMatchesProvider(TIME_NOW + HOUR);
+        assertMatchesProvider(TIME_NOW + 10 * PlantUtils.FULLY_GROWN_AGE);
+    }
+
+    @Test
+    public void lookupsOverRandomGarden() throws InterruptedException {
+        TestGardens.plant(2000, TIME_NOW, 7);
+        startEngine();
+        for (long time = TIME_NOW - HOUR; time <= TIME_NOW + 3 * 24 * HOUR; time += 7 * HOUR) {
+            assertMatchesProvider(time);
+        }
+    }
+
+    @Test
+    public void followsSinglePlantChanges() throws InterruptedException {
+        plantEdgeCases();
+        startEngine();
+        Random random = new Random(1);
+        List<Long> plantIds = new ArrayList<>();
+        for (long[] plant : queryPlants()) plantIds.add(plant[0]);
+        // Each change notifies the plant's own URI, applied by a binary-search insert and a
+        // removal in both orders
+        for (int i = 0; i < 100; i++) {
+            long time = TIME_NOW - (long) (random.nextDouble() * 3 * PlantUtils.FULLY_GROWN_AGE);
+            switch (random.nextInt(3)) {
+                case 0:
+                    plantIds.add(insertPlant(time, Math.max(time, TIME_NOW - random.nextInt(13) * HOUR)));
+                    break;
+                case 1:
+                    ContentValues values = new ContentValues(1);
+                    values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, TIME_NOW - random.nextInt(6) * HOUR);
+                    long plantId = plantIds.get(random.nextInt(plantIds.size()));
+                    mResolver.update(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId),
+                            values, null, null);
+                    break;
+                default:
+                    Uri uri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI,
+                            plantIds.remove(random.nextInt(plantIds.size())));
+                    mResolver.delete(uri, null, null);
+                    break;
+            }
+            awaitMatchesProvider(TIME_NOW);
+        }
+        assertMatchesProvider(TIME_NOW + 5 * HOUR);
+    }
+
+    @Test
+    public void followsWholeGardenChanges() throws InterruptedException {
+        TestGardens.plant(500, TIME_NOW, 3);
+        startEngine();
+        ContentValues values = new ContentValues(1);
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, TIME_NOW);
+        mResolver.update(PlantEntry.CONTENT_WATER_URI, values, null, null);
+        awaitMatchesProvider(TIME_NOW);
+    }
+
+    @Test
+    public void listenerIsNotifiedOfTheLoadAndOfChanges() throws InterruptedException {
+        final int[] notifications = new int[1];
+        mEngine = new GardenStateEngine(RuntimeEnvironment.application);
+        mEngine.setOnChangeListener(new GardenStateEngine.OnChangeListener() {
+            @Override
+            public void onGardenStateChanged() {
+                synchronized (notifications) {
+                    notifications[0]++;
+                    notifications.notifyAll();
+                }
+            }
+        });
+        assertTrue(mEngine.awaitLoaded(TIMEOUT_MILLIS));
+        insertPlant(TIME_NOW, TIME_NOW);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        synchronized (notifications) {
+            // The load may have completed before the listener was set
+            while (notifications[0] < 1 || mEngine.getPlantCount() != 1) {
+                long remaining = deadline - System.currentTimeMillis();
+                assertTrue("Listener not notified", remaining > 0);
+                notifications.wait(remaining);
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+import android.app.Application;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class GardenTransferTest {
+
+    private static final int TYPE_COUNT = 4;
+
+    // Rows of type, creation time and last watered time, including the extreme values
+    private static final long[][] GARDEN = {
+            {0, 0, 0},
+            {1, 1500000000000L, 1500000360000L},
+            {3, Long.MAX_VALUE, Long.MIN_VALUE},
+            {2, -1, Long.MIN_VALUE + 1}
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private PlantContentProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = TestGardens.setUpProvider();
+    }
+
+    @After
+    public void tearDown() {
+        TestGardens.tearDownProvider(mProvider);
+    }
+
+    /**
+     * Collects the plants read
+     */
+    private static class PlantList implements GardenTransfer.PlantSink {
+        final List<long[]> mPlants = new ArrayList<>();
+
+        @Override
+        public void addPlant(int type, long createdAt, long wateredAt) {
+            mPlants.add(new long[]{type, createdAt, wateredAt});
+        }
+
+        long[][] toArray() {
+            return mPlants.toArray(new long[mPlants.size()][]);
+        }
+    }
+
+    private static Cursor gardenCursor(long[][] garden) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{PlantEntry.COLUMN_PLANT_TYPE,
+                PlantEntry.COLUMN_CREATION_TIME, PlantEntry.COLUMN_LAST_WATERED_TIME});
+        for (long[] plant : garden) cursor.addRow(new Object[]{plant[0], plant[1], plant[2]});
+        return cursor;
+    }
+
+    private static byte[] write(long[][] garden, GardenTransfer.Format format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Cursor cursor = gardenCursor(garden);
+        try {
+            assertEquals(garden.length, GardenTransfer.writeGarden(cursor, format,
+                    Channels.newChannel(out), null));
+        } finally {
+            cursor.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static long[][] read(byte[] file, GardenTransfer.Format format) throws IOException {
+        PlantList plants = new PlantList();
+        long plantCount = GardenTransfer.readGarden(
+                Channels.newChannel(new ByteArrayInputStream(file)), format, TYPE_COUNT, plants, null);
+        assertEquals(plantCount, plants.mPlants.size());
+        return plants.toArray();
+    }
+
+    private static long[][] readCsv(String file) throws IOException {
+        return read(file.getBytes("US-ASCII"), GardenTransfer.Format.CSV);
+    }
+
+    private static void assertMalformed(byte[] file, GardenTransfer.Format format, String message) {
+        try {
+            read(file, format);
+            fail("Expected an IOException for " + message);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    private static void assertMalformedCsv(String file, String message) throws IOException {
+        assertMalformed(file.getBytes("US-ASCII"), GardenTransfer.Format.CSV, message);
+    }
+
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        assertArrayEquals(GARDEN, read(write(GARDEN, GardenTransfer.Format.BINARY),
+                GardenTransfer.Format.BINARY));
+    }
+
+    @Test
+    public void csvRoundTrip() throws IOException {
+        assertArrayEquals(GARDEN, read(write(GARDEN, GardenTransfer.Format.CSV),
+                GardenTransfer.Format.CSV));
+    }
+
+    @Test
+    public void roundTripAcrossChunks() throws IOException {
+        // Enough plants for records and lines to straddle the 64K chunks
+        long[][] garden = new long[20000][];
+        for (int i = 0; i < garden.length; i++) {
+            garden[i] = new long[]{i % TYPE_COUNT, 1000000L * i, -7L * i};
+        }
+        for (GardenTransfer.Format format : GardenTransfer.Format.values()) {
+            assertArrayEquals(format.name(), garden, read(write(garden, format), format));
+        }
+    }
+
+    @Test
+    public void emptyGarden() throws IOException {
+        for (GardenTransfer.Format format : GardenTransfer.Format.values()) {
+            assertEquals(format.name(), 0, read(write(new long[0][], format), format).length);
+        }
+    }
+
+    @Test
+    public void csvAllowsBlankLinesCrLfAndMissingFinalLineBreak() throws IOException {
+        long[][] plants = readCsv("plantType,createdAt,lastWateredAt\r\n"
+                + "\r\n"
+                + "1, 2, 3\r\n"
+                + "\n"
+                + "2,-4,5");
+        assertArrayEquals(new long[][]{{1, 2, 3}, {2, -4, 5}}, plants);
+    }
+
+    @Test
+    public void csvRejectsOverflow() throws IOException {
+        assertMalformedCsv("header\n0,9223372036854775808,0\n", "Value out of range on line 2");
+        assertMalformedCsv("header\n0,0,-9223372036854775809\n", "Value out of range on line 2");
+        assertMalformedCsv("header\n0,0,99999999999999999999999\n", "Value out of range on line 2");
+        assertArrayEquals(new long[][]{{0, Long.MAX_VALUE, Long.MIN_VALUE}},
+                readCsv("header\n0,9223372036854775807,-9223372036854775808\n"));
+    }
+
+    @Test
+    public void csvRejectsUnknownTypes() throws IOException {
+        assertMalformedCsv("header\n4,0,0\n", "Unknown plant type 4 on line 2");
+        assertMalformedCsv("header\n-1,0,0\n", "Unknown plant type -1 on line 2");
+        // Would wrap around to a valid type if cast to an int first
+        assertMalformedCsv("header\n4294967296,0,0\n", "Unknown plant type 4294967296 on line 2");
+    }
+
+    @Test
+    public void csvRejectsMalformedLines() throws IOException {
+        assertMalformedCsv("header\n1,2\n", "Missing value on line 2");
+        assertMalformedCsv("header\n1,,3\n", "Missing value on line 2");
+        assertMalformedCsv("header\n1,2,-\n", "Missing value on line 2");
+        assertMalformedCsv("header\n1,2,3,4\n", "Too many values on line 2");
+        assertMalformedCsv("header\n\n1,2,3\n1,x,3\n", "Unexpected character on line 4");
+        assertMalformedCsv("header\n1,2-3,3\n", "Unexpected character on line 2");
+    }
+
+    @Test
+    public void binaryRejectsBadHeader() {
+        assertMalformed(new byte[0], GardenTransfer.Format.BINARY, "Truncated garden file");
+        assertMalformed("not a garden".getBytes(), GardenTransfer.Format.BINARY, "Not a version 1");
+    }
+
+    @Test
+    public void binaryRejectsTruncatedRecord() throws IOException {
+        byte[] file = write(GARDEN, GardenTransfer.Format.BINARY);
+        byte[] truncated = new byte[file.length - 1];
+        System.arraycopy(file, 0, truncated, 0, truncated.length);
+        assertMalformed(truncated, GardenTransfer.Format.BINARY, "Truncated garden file");
+    }
+
+    @Test
+    public void binaryRejectsUnknownTypes() throws IOException {
+        byte[] file = write(GARDEN, GardenTransfer.Format.BINARY);
+        // Type of the second record, after the 8 byte header and the first 20 byte record
+        ByteBuffer.wrap(file).putInt(8 + 20, TYPE_COUNT);
+        assertMalformed(file, GardenTransfer.Format.BINARY, "Unknown plant type 4 in record 2");
+        ByteBuffer.wrap(file).putInt(8 + 20, -1);
+        assertMalformed(file, GardenTransfer.Format.BINARY, "Unknown plant type -1 in record 2");
+    }
+
+    @Test
+    public void providerRoundTrip() throws IOException {
+        TestGardens.plant(1000, 1500000000000L, 1);
+        for (GardenTransfer.Format format : GardenTransfer.Format.values()) {
+            File file = mFolder.newFile("garden." + format.name());
+            Bundle extras = new Bundle();
+            extras.putString(PlantContract.EXTRA_TRANSFER_FORMAT, format.name());
+            Bundle exported = mProvider.call(PlantContract.METHOD_EXPORT_GARDEN,
+                    file.getAbsolutePath(), extras);
+            assertEquals(1000, exported.getLong(PlantContract.EXTRA_PLANT_COUNT));
+
+            // Replace the garden with its copy
+            TestGardens.clear(RuntimeEnvironment.application);
+            Bundle imported = mProvider.call(PlantContract.METHOD_IMPORT_GARDEN,
+                    file.getAbsolutePath(), extras);
+            assertEquals(1000, imported.getLong(PlantContract.EXTRA_PLANT_COUNT));
+        }
+        Cursor cursor = mProvider.query(PlantEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(1000, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void providerImportIsAllOrNothing() throws IOException {
+        File file = mFolder.newFile("garden.csv");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("header\n0,1,1\n1,2,2\n9,3,3\n".getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+        Bundle extras = new Bundle();
+        extras.putString(PlantContract.EXTRA_TRANSFER_FORMAT, GardenTransfer.Format.CSV.name());
+        try {
+            mProvider.call(PlantContract.METHOD_IMPORT_GARDEN, file.getAbsolutePath(), extras);
+            fail("Expected the unknown plant type to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("Unknown plant type 9 on line 4"));
+        }
+        Cursor cursor = mProvider.query(PlantEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+}
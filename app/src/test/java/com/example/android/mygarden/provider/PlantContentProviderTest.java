@@ -0,0 +1,246 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+import android.app.Application;
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.utils.PlantUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class PlantContentProviderTest {
+
+    private static final long TIME_NOW = 1500000000000L;
+    private static final long THREAD_TIMEOUT_MILLIS = 30 * 1000;
+
+    private PlantContentProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = TestGardens.setUpProvider();
+    }
+
+    @After
+    public void tearDown() {
+        TestGardens.tearDownProvider(mProvider);
+    }
+
+    private static ContentValues plantValues(Object type, Object createdAt, Object wateredAt) {
+        ContentValues values = new ContentValues(3);
+        values.put(PlantEntry.COLUMN_PLANT_TYPE, String.valueOf(type));
+        values.put(PlantEntry.COLUMN_CREATION_TIME, String.valueOf(createdAt));
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, String.valueOf(wateredAt));
+        return values;
+    }
+
+    private static ContentValues plantValues(int type, long createdAt, long wateredAt) {
+        ContentValues values = new ContentValues(3);
+        values.put(PlantEntry.COLUMN_PLANT_TYPE, type);
+        values.put(PlantEntry.COLUMN_CREATION_TIME, createdAt);
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, wateredAt);
+        return values;
+    }
+
+    private long insertPlant(int type, long createdAt, long wateredAt) {
+        Uri uri = mProvider.insert(PlantEntry.CONTENT_URI, plantValues(type, createdAt, wateredAt));
+        return ContentUris.parseId(uri);
+    }
+
+    /**
+     * Returns the type, creation time and last watered time of the plant, or null if it is
+     * not in the garden
+     */
+    private long[] queryPlant(long plantId) {
+        Cursor cursor = mProvider.query(ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId),
+                new String[]{PlantEntry.COLUMN_PLANT_TYPE, PlantEntry.COLUMN_CREATION_TIME,
+                        PlantEntry.COLUMN_LAST_WATERED_TIME}, null, null, null);
+        try {
+            if (!cursor.moveToFirst()) return null;
+            return new long[]{cursor.getLong(0), cursor.getLong(1), cursor.getLong(2)};
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countPlants() {
+        Cursor cursor = mProvider.query(PlantEntry.CONTENT_URI, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int waterPlant(long plantId, long wateredAt) {
+        ContentValues values = new ContentValues(1);
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, wateredAt);
+        return mProvider.update(PlantEntry.buildWaterPlantUri(plantId), values, null, null);
+    }
+
+    @Test
+    public void insertStoresTheValues() {
+        long compiled = insertPlant(2, TIME_NOW, TIME_NOW + 1);
+        // Values that are not numbers take the ContentValues path
+        long fallback = ContentUris.parseId(mProvider.insert(PlantEntry.CONTENT_URI,
+                plantValues("3", "4", "5")));
+        assertTrue(compiled > 0);
+        assertTrue(fallback > compiled);
+        assertEquals(2, queryPlant(compiled)[0]);
+        assertEquals(TIME_NOW, queryPlant(compiled)[1]);
+        assertEquals(TIME_NOW + 1, queryPlant(compiled)[2]);
+        assertEquals(5, queryPlant(fallback)[2]);
+    }
+
+    @Test
+    public void waterPlantOnlyWatersLivePlants() {
+        long alive = insertPlant(0, TIME_NOW, TIME_NOW);
+        long dead = insertPlant(0, TIME_NOW, TIME_NOW - PlantUtils.MAX_AGE_WITHOUT_WATER - 1);
+        long wateredAt = TIME_NOW + 1000;
+        assertEquals(1, waterPlant(alive, wateredAt));
+        assertEquals(0, waterPlant(dead, wateredAt));
+        assertEquals(wateredAt, queryPlant(alive)[2]);
+        assertEquals(TIME_NOW - PlantUtils.MAX_AGE_WITHOUT_WATER - 1, queryPlant(dead)[2]);
+    }
+
+    @Test
+    public void waterPlantsSkipsDeadAndRecentlyWateredPlants() {
+        long thirsty = insertPlant(0, TIME_NOW, TIME_NOW - PlantUtils.MIN_AGE_BETWEEN_WATER - 1);
+        long recent = insertPlant(0, TIME_NOW, TIME_NOW - 1);
+        long dead = insertPlant(0, TIME_NOW, TIME_NOW - PlantUtils.MAX_AGE_WITHOUT_WATER - 1);
+        ContentValues values = new ContentValues(1);
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, TIME_NOW);
+        assertEquals(1, mProvider.update(PlantEntry.CONTENT_WATER_URI, values, null, null));
+        assertEquals(TIME_NOW, queryPlant(thirsty)[2]);
+        assertEquals(TIME_NOW - 1, queryPlant(recent)[2]);
+        assertEquals(TIME_NOW - PlantUtils.MAX_AGE_WITHOUT_WATER - 1, queryPlant(dead)[2]);
+    }
+
+    @Test
+    public void waterPlantsNotifiesTheWholeGarden() {
+        insertPlant(0, TIME_NOW, TIME_NOW - PlantUtils.MIN_AGE_BETWEEN_WATER - 1);
+        ShadowContentResolver resolver =
+                Shadows.shadowOf(RuntimeEnvironment.application.getContentResolver());
+        resolver.getNotifiedUris().clear();
+        ContentValues values = new ContentValues(1);
+        values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, TIME_NOW);
+        assertEquals(1, mProvider.update(PlantEntry.CONTENT_WATER_URI, values, null, null));
+        // Notifying plants/water would miss the observers of plants/<id>
+        assertEquals(1, resolver.getNotifiedUris().size());
+        assertEquals(PlantEntry.CONTENT_URI, resolver.getNotifiedUris().get(0).uri);
+    }
+
+    @Test
+    public void deleteHidesThePlant() {
+        long plantId = insertPlant(1, TIME_NOW, TIME_NOW);
+        Uri uri = ContentUris.withAppendedId(PlantEntry.CONTENT_URI, plantId);
+        assertEquals(1, mProvider.delete(uri, null, null));
+        assertNull(queryPlant(plantId));
+        // Deleted plants can be neither deleted again nor watered
+        assertEquals(0, mProvider.delete(uri, null, null));
+        assertEquals(0, waterPlant(plantId, TIME_NOW + 1));
+    }
+
+    @Test
+    public void statementsAreSharedAcrossThreads() throws Exception {
+        final int threadCount = 4;
+        final int plantsPerThread = 500;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final int type = t;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < plantsPerThread; i++) {
+                            // Each thread's plants carry its own values, mixed up bindings show
+                            long plantId = insertPlant(type, TIME_NOW + type, TIME_NOW + i);
+                            long[] plant = queryPlant(plantId);
+                            if (plant[0] != type || plant[1] != TIME_NOW + type
+                                    || plant[2] != TIME_NOW + i) {
+                                throw new AssertionError("Plant " + plantId + " has the values"
+                                        + " of another thread");
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+        // A batch holding the database on another thread while the single writes wait
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+                    for (int i = 0; i < plantsPerThread; i++) {
+                        operations.add(ContentProviderOperation.newInsert(PlantEntry.CONTENT_URI)
+                                .withValues(plantValues(0, TIME_NOW, TIME_NOW)).build());
+                    }
+                    mProvider.applyBatch(operations);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        }));
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) {
+            thread.join(THREAD_TIMEOUT_MILLIS);
+            assertFalse("Writer deadlocked", thread.isAlive());
+        }
+        if (failure.get() != null) throw new AssertionError(failure.get());
+        assertEquals((threadCount + 1) * plantsPerThread, countPlants());
+    }
+
+    @Test
+    public void shutdownClosesTheStatements() {
+        insertPlant(0, TIME_NOW, TIME_NOW);
+        mProvider.shutdown();
+        // The statements are compiled again on the next write
+        long plantId = insertPlant(1, TIME_NOW, TIME_NOW);
+        assertEquals(1, queryPlant(plantId)[0]);
+        assertEquals(2, countPlants());
+    }
+}
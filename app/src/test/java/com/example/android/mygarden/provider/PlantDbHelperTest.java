@@ -0,0 +1,152 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.app.Application;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class PlantDbHelperTest {
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        PlantDbHelper.resetInstance();
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @After
+    public void tearDown() {
+        PlantDbHelper.resetInstance();
+    }
+
+    /**
+     * Returns the plan of the query, one detail line per step
+     */
+    public static String explainQueryPlan(SQLiteDatabase db, String sql, String[] args) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                if (plan.length() > 0) plan.append('\n');
+                plan.append(cursor.getString(detail));
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+
+    private static List<String> queryIndexNames(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND tbl_name=?",
+                new String[]{PlantEntry.TABLE_NAME});
+        List<String> names = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) names.add(cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+
+    @Test
+    public void onUpgrade_keepsVersion1Garden() {
+        File file = mContext.getDatabasePath(PlantDbHelper.DATABASE_NAME);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        SQLiteDatabase v1 = SQLiteDatabase.openOrCreateDatabase(file, null);
+        v1.execSQL("CREATE TABLE plants (_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + " plantType INTEGER NOT NULL, createdAt TIMESTAMP NOT NULL,"
+                + " lastWateredAt TIMESTAMP NOT NULL)");
+        v1.execSQL("INSERT INTO plants (plantType, createdAt, lastWateredAt) VALUES (1, 1000, 2000)");
+        v1.execSQL("INSERT INTO plants (plantType, createdAt, lastWateredAt) VALUES (0, 3000, 4000)");
+        v1.setVersion(1);
+        v1.close();
+
+        SQLiteDatabase db = PlantDbHelper.getInstance(mContext).getWritableDatabase();
+        Cursor cursor = db.query(PlantEntry.TABLE_NAME, new String[]{PlantEntry.COLUMN_PLANT_TYPE,
+                        PlantEntry.COLUMN_CREATION_TIME, PlantEntry.COLUMN_LAST_WATERED_TIME,
+                        PlantEntry.COLUMN_DELETED},
+                null, null, null, null, PlantEntry._ID);
+        try {
+            assertEquals(2, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(1, cursor.getInt(0));
+            assertEquals(1000, cursor.getLong(1));
+            assertEquals(2000, cursor.getLong(2));
+            assertEquals(0, cursor.getInt(3));
+        } finally {
+            cursor.close();
+        }
+        List<String> indexes = queryIndexNames(db);
+        assertTrue(indexes.contains("plants_created_at_idx"));
+        assertTrue(indexes.contains("plants_last_watered_at_idx"));
+    }
+
+    @Test
+    public void onCreate_matchesUpgradedSchema() {
+        SQLiteDatabase db = PlantDbHelper.getInstance(mContext).getWritableDatabase();
+        List<String> indexes = queryIndexNames(db);
+        assertTrue(indexes.contains("plants_created_at_idx"));
+        assertTrue(indexes.contains("plants_last_watered_at_idx"));
+        db.execSQL("INSERT INTO plants (plantType, createdAt, lastWateredAt) VALUES (0, 1, 1)");
+        assertEquals(1, db.compileStatement("SELECT COUNT(*) FROM plants WHERE deleted=0")
+                .simpleQueryForLong());
+    }
+
+    @Test
+    public void queryPlans_useIndexes() {
+        SQLiteDatabase db = PlantDbHelper.getInstance(mContext).getWritableDatabase();
+        // The garden in display order, as paged by GardenPages
+        String gardenPlan = explainQueryPlan(db, "SELECT _id, plantType, createdAt, lastWateredAt"
+                + " FROM plants WHERE deleted=0 ORDER BY createdAt, _id LIMIT 64", null);
+        assertTrue(gardenPlan, gardenPlan.contains("plants_created_at_idx"));
+        assertFalse(gardenPlan, gardenPlan.contains("TEMP B-TREE"));
+        // The thirstiest plant, for the widgets
+        String thirstiestPlan = explainQueryPlan(db, "SELECT _id, plantType, createdAt, lastWateredAt"
+                + " FROM plants WHERE deleted=0 ORDER BY lastWateredAt LIMIT 1", null);
+        assertTrue(thirstiestPlan, thirstiestPlan.contains("COVERING INDEX plants_last_watered_at_idx"));
+        assertFalse(thirstiestPlan, thirstiestPlan.contains("TEMP B-TREE"));
+        // The alive and thirsty plants, watered all at once
+        String waterPlan = explainQueryPlan(db, "SELECT COUNT(*) FROM plants"
+                + " WHERE lastWateredAt>? AND lastWateredAt<? AND deleted=0", new String[]{"0", "1"});
+        assertTrue(waterPlan, waterPlan.contains("plants_last_watered_at_idx (lastWateredAt>? AND lastWateredAt<?)"));
+    }
+}
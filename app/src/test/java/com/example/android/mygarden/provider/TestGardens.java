@@ -0,0 +1,106 @@
+package com.example.android.mygarden.provider;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+
+import com.example.android.mygarden.provider.PlantContract.PlantEntry;
+import com.example.android.mygarden.utils.PlantUtils;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Random;
+
+/**
+ * Sets up the plant provider on an empty database and fills it with generated gardens, for
+ * the Robolectric tests and benchmarks
+ */
+public final class TestGardens {
+
+    // Rows per bulk insert when filling a garden
+    private static final int FILL_BATCH_SIZE = 1000;
+
+    private TestGardens() {
+    }
+
+    /**
+     * Creates the provider on a new database of the current test application and registers it
+     * with the content resolver
+     *
+     * @return The provider
+     */
+    public static PlantContentProvider setUpProvider() {
+        PlantDbHelper.resetInstance();
+        RuntimeEnvironment.application.deleteDatabase(PlantDbHelper.DATABASE_NAME);
+        return Robolectric.buildContentProvider(PlantContentProvider.class)
+                .create(PlantContract.AUTHORITY).get();
+    }
+
+    /**
+     * Releases the provider's statements and closes the database
+     *
+     * @param provider The provider returned by {@link #setUpProvider}
+     */
+    public static void tearDownProvider(PlantContentProvider provider) {
+        provider.shutdown();
+        PlantDbHelper.resetInstance();
+    }
+
+    /**
+     * Removes every row of the plants table, including the cut plants
+     *
+     * @param context The context
+     */
+    public static void clear(Context context) {
+        PlantDbHelper.getInstance(context).getWritableDatabase()
+                .delete(PlantEntry.TABLE_NAME, null, null);
+    }
+
+    /**
+     * Plants a garden of the given size through the provider. Plants are created during the
+     * last three days and watered during the last day, so every type, status and size shows up.
+     *
+     * @param count   The number of plants
+     * @param timeNow The current time
+     * @param seed    The seed of the generated times and types
+     */
+    public static void plant(int count, long timeNow, long seed) {
+        ContentResolver resolver = RuntimeEnvironment.application.getContentResolver();
+        int typeCount = PlantUtils.getPlantTypeCount(RuntimeEnvironment.application);
+        Random random = new Random(seed);
+        long day = 24 * 60 * 60 * 1000L;
+        ContentValues[] batch = new ContentValues[Math.min(count, FILL_BATCH_SIZE)];
+        int planted = 0;
+        while (planted < count) {
+            int size = Math.min(batch.length, count - planted);
+            if (size != batch.length) batch = new ContentValues[size];
+            for (int i = 0; i < size; i++) {
+                long createdAt = timeNow - (long) (random.nextDouble() * 3 * day);
+                long wateredAt = Math.max(createdAt, timeNow - (long) (random.nextDouble() * day));
+                ContentValues values = new ContentValues(3);
+                values.put(PlantEntry.COLUMN_PLANT_TYPE, random.nextInt(typeCount));
+                values.put(PlantEntry.COLUMN_CREATION_TIME, createdAt);
+                values.put(PlantEntry.COLUMN_LAST_WATERED_TIME, wateredAt);
+                batch[i] = values;
+            }
+            planted += resolver.bulkInsert(PlantEntry.CONTENT_URI, batch);
+        }
+    }
+}
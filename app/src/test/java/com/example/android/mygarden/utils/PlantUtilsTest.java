@@ -0,0 +1,89 @@
+package com.example.android.mygarden.utils;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import android.app.Application;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import com.example.android.mygarden.BuildConfig;
+import com.example.android.mygarden.R;
+import com.example.android.mygarden.utils.PlantUtils.PlantSize;
+import com.example.android.mygarden.utils.PlantUtils.PlantStatus;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static com.example.android.mygarden.utils.TestPlantImages.getPlantImgResByName;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 25, application = Application.class)
+public class PlantUtilsTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long DAY = HOUR * 24;
+
+    @Test
+    public void getPlantImgRes_matchesLookupByName() {
+        Context context = RuntimeEnvironment.application;
+        int typeCount = PlantUtils.getPlantTypeCount(context);
+        assertEquals(TestPlantImages.getPlantTypeCount(context), typeCount);
+        for (int type = 0; type < typeCount; type++) {
+            for (PlantStatus status : PlantStatus.values()) {
+                for (PlantSize size : PlantSize.values()) {
+                    int expected = getPlantImgResByName(context, type, status, size);
+                    assertNotEquals(0, expected);
+                    assertEquals(type + " " + status + " " + size, expected,
+                            PlantUtils.getPlantImgRes(context, type, status, size));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void getPlantImgRes_unknownType() {
+        Context context = RuntimeEnvironment.application;
+        int typeCount = PlantUtils.getPlantTypeCount(context);
+        assertEquals(0, PlantUtils.getPlantImgRes(context, -1, PlantStatus.ALIVE, PlantSize.TINY));
+        assertEquals(0, PlantUtils.getPlantImgRes(context, typeCount, PlantStatus.ALIVE, PlantSize.TINY));
+    }
+
+    @Test
+    public void getPlantImgRes_afterConfigurationChange() {
+        Context context = RuntimeEnvironment.application;
+        int before = PlantUtils.getPlantImgRes(context, 1, PlantStatus.DYING, PlantSize.JUVENILE);
+        context.getApplicationContext().onConfigurationChanged(new Configuration());
+        assertEquals(before, PlantUtils.getPlantImgRes(context, 1, PlantStatus.DYING, PlantSize.JUVENILE));
+    }
+
+    @Test
+    public void getPlantImageRes_thresholds() {
+        Context context = RuntimeEnvironment.application;
+        assertEquals(R.drawable.empty_pot, PlantUtils.getPlantImageRes(context, 0, 0, 0));
+        assertEquals(getPlantImgResByName(context, 0, PlantStatus.ALIVE, PlantSize.TINY),
+                PlantUtils.getPlantImageRes(context, HOUR, HOUR, 0));
+        assertEquals(getPlantImgResByName(context, 0, PlantStatus.DYING, PlantSize.JUVENILE),
+                PlantUtils.getPlantImageRes(context, DAY + 1, 7 * HOUR, 0));
+        assertEquals(getPlantImgResByName(context, 1, PlantStatus.DEAD, PlantSize.FULLY_GROWN),
+                PlantUtils.getPlantImageRes(context, 2 * DAY + 1, 13 * HOUR, 1));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.android.mygarden.utils;
+
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+
+import com.example.android.mygarden.R;
+import com.example.android.mygarden.utils.PlantUtils.PlantSize;
+import com.example.android.mygarden.utils.PlantUtils.PlantStatus;
+
+/**
+ * Resolves plant images the slow way, as a reference for the tests and benchmarks of
+ * PlantUtils
+ */
+public final class TestPlantImages {
+
+    private TestPlantImages() {
+    }
+
+    /**
+     * Resolves the image by name on every call, the way getPlantImgRes did before the table
+     */
+    public static int getPlantImgResByName(Context context, int type, PlantStatus status,
+                                           PlantSize size) {
+        Resources res = context.getResources();
+        String resName;
+        TypedArray plantTypes = res.obtainTypedArray(R.array.plant_types);
+        try {
+            resName = plantTypes.getString(type);
+        } finally {
+            plantTypes.recycle();
+        }
+        if (status == PlantStatus.DYING) resName += "_danger";
+        else if (status == PlantStatus.DEAD) resName += "_dead";
+        if (size == PlantSize.TINY) resName += "_1";
+        else if (size == PlantSize.JUVENILE) resName += "_2";
+        else if (size == PlantSize.FULLY_GROWN) resName += "_3";
+        return res.getIdentifier(resName, "drawable", context.getPackageName());
+    }
+
+    /**
+     * Returns the number of plant types declared in the resources
+     */
+    public static int getPlantTypeCount(Context context) {
+        TypedArray plantTypes = context.getResources().obtainTypedArray(R.array.plant_types);
+        try {
+            return plantTypes.length();
+        } finally {
+            plantTypes.recycle();
+        }
+    }
+}